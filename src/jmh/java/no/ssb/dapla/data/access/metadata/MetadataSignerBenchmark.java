@@ -0,0 +1,88 @@
+package no.ssb.dapla.data.access.metadata;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signing and verification throughput of one shared signer, with a single thread and with as many threads as there
+ * are cores contending for it. The batch variant signs through a {@link MerkleBatchSigner}, the way writeLocation
+ * signs when batch signing is enabled.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataSignerBenchmark {
+
+    MetadataSigner metadataSigner;
+    ExecutorService signingExecutor;
+    MerkleBatchSigner batchSigner;
+    byte[] metadata;
+    byte[] signature;
+
+    @Setup
+    public void setup() {
+        metadataSigner = new MetadataSigner("PKCS12", "src/test/resources/metadata-signer_keystore.p12",
+                "dataAccessKeyPair", "changeit".toCharArray(), "SHA256withRSA");
+        metadata = ("{\"id\":{\"path\":\"/raw/skatt/person/rawdata-2019\",\"version\":\"1582719098762\"}," +
+                "\"type\":\"BOUNDED\",\"valuation\":\"SENSITIVE\",\"state\":\"RAW\",\"createdBy\":\"user\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        signature = metadataSigner.sign(metadata);
+        int cores = Runtime.getRuntime().availableProcessors();
+        signingExecutor = Executors.newFixedThreadPool(cores);
+        batchSigner = new MerkleBatchSigner(metadataSigner, signingExecutor, cores, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        batchSigner.close();
+        signingExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public byte[] sign() {
+        return metadataSigner.sign(metadata);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] signContended() {
+        return metadataSigner.sign(metadata);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] batchSignContended() {
+        return batchSigner.sign(metadata).join();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean verify() {
+        return metadataSigner.verify(metadata, signature);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean verifyContended() {
+        return metadataSigner.verify(metadata, signature);
+    }
+}
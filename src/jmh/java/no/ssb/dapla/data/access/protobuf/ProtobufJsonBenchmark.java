@@ -0,0 +1,106 @@
+package no.ssb.dapla.data.access.protobuf;
+
+import com.google.protobuf.ByteString;
+import no.ssb.dapla.dataset.api.DatasetId;
+import no.ssb.dapla.dataset.api.DatasetMeta;
+import no.ssb.dapla.dataset.api.DatasetState;
+import no.ssb.dapla.dataset.api.Type;
+import no.ssb.dapla.dataset.api.Valuation;
+import no.ssb.dapla.data.access.metadata.MetadataJson;
+import no.ssb.helidon.media.protobuf.ProtobufJsonUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Protobuf JSON conversions done for every writeLocation request. Run with {@code -prof gc} for allocation rates,
+ * the writeLocation metadata benchmarks use a {@code DatasetMeta} with a large pseudo config.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProtobufJsonBenchmark {
+
+    DatasetMeta datasetMeta;
+    String datasetMetaJson;
+    DatasetMeta largeDatasetMeta;
+    WriteLocationResponse writeLocationResponse;
+    String writeLocationResponseJson;
+
+    @Setup
+    public void setup() {
+        datasetMeta = DatasetMeta.newBuilder()
+                .setId(DatasetId.newBuilder()
+                        .setPath("/raw/skatt/person/rawdata-2019")
+                        .setVersion("1582719098762")
+                        .build())
+                .setType(Type.BOUNDED)
+                .setValuation(Valuation.SENSITIVE)
+                .setState(DatasetState.RAW)
+                .setCreatedBy("user")
+                .build();
+        datasetMetaJson = ProtobufJsonUtils.toString(datasetMeta);
+        StringBuilder pseudoVars = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            pseudoVars.append(i == 0 ? "" : ",")
+                    .append("{\"var\":\"person_fodselsnummer_").append(i).append("\",\"pseudoFunc\":\"fpe-fnr(secret1)\"}");
+        }
+        largeDatasetMeta = ProtobufJsonUtils.toPojo(datasetMetaJson.substring(0, datasetMetaJson.lastIndexOf('}'))
+                + ",\"pseudoConfig\":{\"vars\":[" + pseudoVars + "]}}", DatasetMeta.class);
+        ByteString signature = ByteString.copyFrom(new byte[256]);
+        writeLocationResponse = WriteLocationResponse.newBuilder()
+                .setAccessAllowed(true)
+                .setValidMetadataJson(ByteString.copyFromUtf8(datasetMetaJson))
+                .setMetadataSignature(signature)
+                .setParentUri("gs://ssb-data-staging/datastore/sensitive")
+                .setAllValidMetadataJson(ByteString.copyFromUtf8(datasetMetaJson))
+                .setAllMetadataSignature(signature)
+                .setAccessToken("ya29.c.Kp8B-" + "x".repeat(200))
+                .setExpirationTime(System.currentTimeMillis())
+                .build();
+        writeLocationResponseJson = ProtobufJsonUtils.toString(writeLocationResponse);
+    }
+
+    @Benchmark
+    public DatasetMeta datasetMetaRoundTrip() {
+        return ProtobufJsonUtils.toPojo(ProtobufJsonUtils.toString(datasetMeta), DatasetMeta.class);
+    }
+
+    @Benchmark
+    public String datasetMetaToJson() {
+        return ProtobufJsonUtils.toString(datasetMeta);
+    }
+
+    @Benchmark
+    public byte[] writeLocationMetadataCopies() {
+        // string, utf-8 ByteString and the array handed to the signer, as writeLocation used to do
+        return ByteString.copyFromUtf8(ProtobufJsonUtils.toString(largeDatasetMeta)).toByteArray();
+    }
+
+    @Benchmark
+    public ByteString writeLocationMetadataSinglePass() {
+        return MetadataJson.toJson(largeDatasetMeta);
+    }
+
+    @Benchmark
+    public WriteLocationResponse writeLocationResponseRoundTrip() {
+        return ProtobufJsonUtils.toPojo(ProtobufJsonUtils.toString(writeLocationResponse), WriteLocationResponse.class);
+    }
+
+    @Benchmark
+    public WriteLocationResponse writeLocationResponseFromJson() {
+        return ProtobufJsonUtils.toPojo(writeLocationResponseJson, WriteLocationResponse.class);
+    }
+}
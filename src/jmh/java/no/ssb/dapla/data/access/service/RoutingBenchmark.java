@@ -0,0 +1,100 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import no.ssb.dapla.dataset.api.DatasetState;
+import no.ssb.dapla.dataset.api.Valuation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Route resolution against synthetic routing tables. Every rule routes its own data domain, like the
+ * {@code /raw/skatt/}, {@code /raw/sirius/} and {@code /raw/ske/} rules of the real tables, and the table ends with
+ * a catch-all rule.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+
+    private static final Valuation[] VALUATIONS = {Valuation.SENSITIVE, Valuation.SHIELDED, Valuation.INTERNAL, Valuation.OPEN};
+    private static final DatasetState[] STATES = {DatasetState.RAW, DatasetState.INPUT, DatasetState.OUTPUT};
+
+    @Param({"10", "100", "1000", "10000"})
+    int rules;
+
+    RoutingTable routingTable;
+    AbstractDataAccessService dataAccessService;
+    String[] paths;
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Config config = syntheticRoutingConfig(rules);
+        routingTable = RoutingTable.create(config);
+        dataAccessService = new MockDataAccessService(config);
+        Random random = new Random(42);
+        paths = new String[1024];
+        for (int i = 0; i < paths.length; i++) {
+            // a tenth of the lookups fall through to the catch-all rule
+            paths[i] = random.nextInt(10) == 0
+                    ? "/unrouted/domain-" + random.nextInt(rules) + "/dataset"
+                    : "/raw/domain-" + random.nextInt(rules) + "/dataset-" + random.nextInt(100);
+        }
+    }
+
+    @Benchmark
+    public Route routingTable() {
+        int i = next++ & (paths.length - 1);
+        return routingTable.route(paths[i], VALUATIONS[i & 3], STATES[i % 3]);
+    }
+
+    @Benchmark
+    public Route cachedRoute() {
+        int i = next++ & (paths.length - 1);
+        return dataAccessService.getRoute(paths[i], VALUATIONS[i & 3], STATES[i % 3]);
+    }
+
+    @Benchmark
+    public Route targetRoute() {
+        return dataAccessService.getRoute("gs", "bucket-" + (next++ % rules));
+    }
+
+    static Config syntheticRoutingConfig(int rules) {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < rules; i++) {
+            String valuations = i % 2 == 0
+                    ? "\"valuations\":{\"includes\":[\"SENSITIVE\"]},"
+                    : "\"valuations\":{\"excludes\":[\"SENSITIVE\"]},";
+            entries.add("{\"source\":{" +
+                    "\"paths\":{\"includes\":[\"/raw/domain-" + i + "/\",\"/domain-" + i + "/\"]," +
+                    "\"excludes\":[\"/raw/domain-" + i + "/special\"]}," +
+                    valuations +
+                    "\"states\":{\"includes\":[\"RAW\",\"INPUT\",\"OUTPUT\"]}}," +
+                    "\"target\":{\"uri\":{\"scheme\":\"gs\",\"host\":\"bucket-" + i + "\",\"path-prefix\":\"/datastore\"}," +
+                    "\"auth\":{\"read\":\"read-" + i + ".json\",\"write\":\"write-" + i + ".json\"}}}");
+        }
+        entries.add("{\"source\":{},\"target\":{\"uri\":{\"scheme\":\"gs\",\"host\":\"catch-all\"}}}");
+        return Config.builder().disableEnvironmentVariablesSource()
+                .sources(ConfigSources.create("{\"routing\":[" + String.join(",", entries) + "]}", "application/json"))
+                .build();
+    }
+}
@@ -43,6 +43,7 @@ module no.ssb.dapla.data.access {
     requires com.google.auth;
 
     requires java.jwt;
+    requires com.github.benmanes.caffeine;
     requires no.ssb.dapla.dataset.api;
     requires com.google.protobuf;
 
@@ -1,20 +1,26 @@
 package no.ssb.dapla.data.access;
 
 import io.helidon.config.Config;
-import io.helidon.config.ConfigSources;
-import io.helidon.config.ConfigValue;
 import io.helidon.metrics.MetricsSupport;
 import io.helidon.webserver.Routing;
+import io.helidon.webserver.SocketConfiguration;
 import io.helidon.webserver.WebServer;
 import io.helidon.webserver.WebTracingConfig;
 import io.helidon.webserver.accesslog.AccessLogSupport;
 import io.opentracing.Tracer;
+import no.ssb.dapla.data.access.concurrent.BoundedExecutors;
 import no.ssb.dapla.data.access.health.Health;
+import no.ssb.dapla.data.access.metadata.MerkleBatchSigner;
 import no.ssb.dapla.data.access.metadata.MetadataSigner;
+import no.ssb.dapla.data.access.service.AbstractDataAccessService;
+import no.ssb.dapla.data.access.service.AccessCacheAdminService;
+import no.ssb.dapla.data.access.service.CachingUserAccessClient;
 import no.ssb.dapla.data.access.service.CatalogClient;
 import no.ssb.dapla.data.access.service.DataAccessHttpService;
 import no.ssb.dapla.data.access.service.DataAccessService;
 import no.ssb.dapla.data.access.service.GoogleDataAccessService;
+import no.ssb.dapla.data.access.service.PolicySnapshotUserAccessClient;
+import no.ssb.dapla.data.access.service.RoutingTableReloader;
 import no.ssb.dapla.data.access.service.UserAccessClient;
 import no.ssb.helidon.application.DefaultHelidonApplication;
 import no.ssb.helidon.media.protobuf.ProtobufJsonSupport;
@@ -22,12 +28,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 public class DataAccessApplication extends DefaultHelidonApplication {
 
+    /**
+     * Name of the webserver socket that serves the admin endpoints, see {@code webserver.admin}.
+     */
+    public static final String ADMIN_SOCKET = "admin";
+
     private static final Logger LOG;
 
     static {
@@ -53,56 +69,135 @@ public class DataAccessApplication extends DefaultHelidonApplication {
     DataAccessApplication(Config config, Tracer tracer, UserAccessClient userAccessClient, CatalogClient catalogClient) {
         put(Config.class, config);
 
+        Path routingFile = Path.of(config.get("routing.file").asString().get());
         DataAccessService dataAccessService;
         if (config.get("data-access.provider").exists()) {
             final String className = config.get("data-access.provider").asString().get();
             try {
                 dataAccessService = (DataAccessService) Class.forName(className)
-                        .getDeclaredConstructor(Config.class, ConfigValue.class)
-                        .newInstance(loadConfig(config.get("routing.file").asString().get()),
-                                config.get("token.lifetime").asInt());
+                        .getDeclaredConstructor(Config.class, Config.class)
+                        .newInstance(RoutingTableReloader.loadConfig(routingFile), config);
             } catch (ReflectiveOperationException e) {
                 throw new RuntimeException("Could not instantiate " + className, e);
             }
         } else {
-            dataAccessService = new GoogleDataAccessService(loadConfig(config.get("routing.file").asString().get()),
-                    config.get("token.lifetime").asInt());
+            dataAccessService = new GoogleDataAccessService(RoutingTableReloader.loadConfig(routingFile), config);
+        }
+
+        RoutingTableReloader routingTableReloader = null;
+        if (dataAccessService instanceof AbstractDataAccessService) {
+            AbstractDataAccessService routedService = (AbstractDataAccessService) dataAccessService;
+            routingTableReloader = new RoutingTableReloader(
+                    routingFile,
+                    routedService.getRoutingTable(),
+                    TimeUnit.SECONDS.toMillis(config.get("routing.poll-interval").asInt().orElse(30)),
+                    routedService::setRoutingTable);
+            put(RoutingTableReloader.class, routingTableReloader);
         }
 
         Config signerConfig = config.get("metadatads");
         String keystoreFormat = signerConfig.get("format").asString().get();
         String keystore = signerConfig.get("keystore").asString().get();
-        String keyAlias = signerConfig.get("keyAlias").asString().get();
         char[] password = signerConfig.get("password-file").asString()
                 .filter(s -> !s.isBlank())
                 .map(passwordFile -> Path.of(passwordFile))
                 .filter(Files::exists)
                 .map(this::readPasswordFromFile)
                 .orElseGet(() -> signerConfig.get("password").asString().get().toCharArray());
-        String algorithm = signerConfig.get("algorithm").asString().get();
 
-        MetadataSigner metadataSigner = new MetadataSigner(keystoreFormat, keystore, keyAlias, password, algorithm);
+        MetadataSigner metadataSigner;
+        if (signerConfig.get("keys").exists()) {
+            List<MetadataSigner.KeyConfig> keys = signerConfig.get("keys").asNodeList().get().stream()
+                    .map(key -> new MetadataSigner.KeyConfig(
+                            key.get("id").asString().get(),
+                            key.get("alias").asString().orElseGet(() -> key.get("id").asString().get()),
+                            key.get("algorithm").asString().orElse(null)))
+                    .collect(Collectors.toList());
+            String activeKeyId = signerConfig.get("active-key").asString().get();
+            metadataSigner = new MetadataSigner(keystoreFormat, keystore, password, keys, activeKeyId);
+        } else {
+            String keyAlias = signerConfig.get("keyAlias").asString().get();
+            String algorithm = signerConfig.get("algorithm").asString().get();
+            metadataSigner = new MetadataSigner(keystoreFormat, keystore, keyAlias, password, algorithm);
+        }
         put(MetadataSigner.class, metadataSigner);
 
-        DataAccessHttpService dataAccessHttpService = new DataAccessHttpService(dataAccessService, userAccessClient, catalogClient, metadataSigner);
+        ExecutorService signingExecutor = BoundedExecutors.create("metadataSigningExecutor", signerConfig.get("signing-executor"),
+                Runtime.getRuntime().availableProcessors(), 1000);
+
+        MerkleBatchSigner batchSigner = null;
+        if (signerConfig.get("batch.enabled").asBoolean().orElse(false)) {
+            batchSigner = new MerkleBatchSigner(metadataSigner, signingExecutor,
+                    signerConfig.get("batch.max-size").asInt().orElse(64),
+                    signerConfig.get("batch.max-delay").asLong().orElse(5));
+            put(MerkleBatchSigner.class, batchSigner);
+        }
+
+        DataAccessHttpService dataAccessHttpService = new DataAccessHttpService(dataAccessService, userAccessClient, catalogClient,
+                metadataSigner, signingExecutor, batchSigner, config.get("data-access.pipeline"));
         put(DataAccessHttpService.class, dataAccessHttpService);
 
-        Routing routing = Routing.builder()
+        Routing.Builder routingBuilder = Routing.builder()
                 .register(AccessLogSupport.create(config.get("webserver.access-log")))
                 .register(WebTracingConfig.create(config.get("tracing")))
                 .register(MetricsSupport.create())
                 .register(Health.create(config, () -> get(WebServer.class)))
-                .register(dataAccessHttpService)
-                .build();
+                .register(dataAccessHttpService);
+        Routing routing = routingBuilder.build();
         put(Routing.class, routing);
 
-        WebServer webServer = WebServer.builder()
+        WebServer.Builder webServerBuilder = WebServer.builder()
                 .config(config.get("webserver"))
                 .addMediaSupport(ProtobufJsonSupport.create())
                 .tracer(tracer)
-                .routing(routing)
-                .build();
+                .routing(routing);
+
+        UserAccessClient remoteUserAccessClient = userAccessClient;
+        if (userAccessClient instanceof PolicySnapshotUserAccessClient) {
+            put(PolicySnapshotUserAccessClient.class, (PolicySnapshotUserAccessClient) userAccessClient);
+            remoteUserAccessClient = ((PolicySnapshotUserAccessClient) userAccessClient).getRemote();
+        }
+        Config adminConfig = config.get("webserver.admin");
+        if (remoteUserAccessClient instanceof CachingUserAccessClient && adminConfig.get("port").exists()) {
+            // admin endpoints are served on their own socket only, which must not be reachable by clients
+            webServerBuilder
+                    .addSocket(ADMIN_SOCKET, SocketConfiguration.builder()
+                            .port(adminConfig.get("port").asInt().get())
+                            .bindAddress(adminBindAddress(adminConfig.get("host").asString().orElse("127.0.0.1")))
+                            .build())
+                    .addNamedRouting(ADMIN_SOCKET, Routing.builder()
+                            .register(new AccessCacheAdminService((CachingUserAccessClient) remoteUserAccessClient))
+                            .build());
+        }
+
+        WebServer webServer = webServerBuilder.build();
         put(WebServer.class, webServer);
+
+        RoutingTableReloader reloader = routingTableReloader;
+        MerkleBatchSigner signer = batchSigner;
+        DataAccessService service = dataAccessService;
+        // release the background threads and file watches once the webserver has stopped
+        webServer.whenShutdown().toStage().thenRun(() -> {
+            if (reloader != null) {
+                reloader.close();
+            }
+            if (userAccessClient instanceof PolicySnapshotUserAccessClient) {
+                ((PolicySnapshotUserAccessClient) userAccessClient).close();
+            }
+            if (signer != null) {
+                signer.close();
+            }
+            signingExecutor.shutdown();
+            service.close();
+        });
+    }
+
+    private static InetAddress adminBindAddress(String host) {
+        try {
+            return InetAddress.getByName(host);
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("Invalid configuration: webserver.admin.host " + host, e);
+        }
     }
 
     private char[] readPasswordFromFile(Path passwordPath) {
@@ -113,8 +208,4 @@ public class DataAccessApplication extends DefaultHelidonApplication {
         }
     }
 
-    private Config loadConfig(String path) {
-        return Config.builder().disableEnvironmentVariablesSource().sources(ConfigSources.file(path)).build();
-    }
-
 }
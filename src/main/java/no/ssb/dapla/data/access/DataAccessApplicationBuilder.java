@@ -3,8 +3,14 @@ package no.ssb.dapla.data.access;
 import io.helidon.config.Config;
 import io.helidon.tracing.TracerBuilder;
 import io.opentracing.Tracer;
+import no.ssb.dapla.data.access.service.CachingCatalogClient;
+import no.ssb.dapla.data.access.service.CachingUserAccessClient;
 import no.ssb.dapla.data.access.service.CatalogClient;
 import no.ssb.dapla.data.access.service.CatalogWebClient;
+import no.ssb.dapla.data.access.service.CoalescingCatalogClient;
+import no.ssb.dapla.data.access.service.CoalescingUserAccessClient;
+import no.ssb.dapla.data.access.service.PolicySnapshotUserAccessClient;
+import no.ssb.dapla.data.access.service.TokenVerifier;
 import no.ssb.dapla.data.access.service.UserAccessClient;
 import no.ssb.dapla.data.access.service.UserAccessWebClient;
 import no.ssb.helidon.application.DefaultHelidonApplicationBuilder;
@@ -41,7 +47,8 @@ public class DataAccessApplicationBuilder extends DefaultHelidonApplicationBuild
                     new RuntimeException("missing configuration: catalog-service.host"));
             int port = config.get("catalog-service").get("port").asInt().orElseThrow(() ->
                     new RuntimeException("missing configuration: catalog-service.port"));
-            catalogClient = new CatalogWebClient(host, port);
+            catalogClient = new CachingCatalogClient(new CoalescingCatalogClient(new CatalogWebClient(host, port)),
+                    config.get("catalog-service.cache"));
         }
 
         if (userAccessClient == null) {
@@ -49,7 +56,14 @@ public class DataAccessApplicationBuilder extends DefaultHelidonApplicationBuild
                     new RuntimeException("missing configuration: auth-service.host"));
             int port = config.get("auth-service").get("port").asInt().orElseThrow(() ->
                     new RuntimeException("missing configuration: auth-service.port"));
-            userAccessClient = new UserAccessWebClient(host, port);
+            UserAccessWebClient userAccessWebClient = new UserAccessWebClient(host, port);
+            userAccessClient = new CachingUserAccessClient(new CoalescingUserAccessClient(userAccessWebClient),
+                    config.get("auth-service.cache"));
+            if (config.get("auth-service.policy.enabled").asBoolean().orElse(false)) {
+                TokenVerifier tokenVerifier = TokenVerifier.create(config.get("auth-service.policy.token-verification"));
+                userAccessClient = new PolicySnapshotUserAccessClient(userAccessClient, userAccessWebClient, tokenVerifier,
+                        host, port, config.get("auth-service.policy"));
+            }
         }
 
         return new DataAccessApplication(config, tracer, userAccessClient, catalogClient);
@@ -0,0 +1,60 @@
+package no.ssb.dapla.data.access.concurrent;
+
+import io.helidon.config.Config;
+import io.helidon.metrics.RegistryFactory;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed size thread pools with a bounded queue, used to keep blocking and cpu heavy work off the webserver threads.
+ * <p>
+ * Every pool publishes {@code <name>QueueDepth} and {@code <name>ActiveCount} gauges and a
+ * {@code <name>RejectedCount} counter to the application metrics registry.
+ */
+public class BoundedExecutors {
+
+    /**
+     * Create a pool configured from the {@code threads} and {@code queue-size} keys of the given config node.
+     */
+    public static ExecutorService create(String name, Config config, int defaultThreads, int defaultQueueSize) {
+        return create(name,
+                config.get("threads").asInt().orElse(defaultThreads),
+                config.get("queue-size").asInt().orElse(defaultQueueSize));
+    }
+
+    public static ExecutorService create(String name, int threads, int queueSize) {
+        MetricRegistry appRegistry = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+        Counter rejectedCount = appRegistry.counter(name + "RejectedCount");
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueSize), daemonThreadFactory(name),
+                (runnable, pool) -> {
+                    rejectedCount.inc();
+                    throw new RejectedExecutionException(name + " is saturated, queue size: " + pool.getQueue().size());
+                });
+        executor.allowCoreThreadTimeOut(true);
+        // the most recently created pool of a name owns its gauges
+        appRegistry.remove(name + "QueueDepth");
+        appRegistry.register(name + "QueueDepth", (Gauge<Integer>) () -> executor.getQueue().size());
+        appRegistry.remove(name + "ActiveCount");
+        appRegistry.register(name + "ActiveCount", (Gauge<Integer>) executor::getActiveCount);
+        return executor;
+    }
+
+    static ThreadFactory daemonThreadFactory(String name) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
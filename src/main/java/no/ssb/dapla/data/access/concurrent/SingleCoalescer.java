@@ -0,0 +1,131 @@
+package no.ssb.dapla.data.access.concurrent;
+
+import io.helidon.common.reactive.Single;
+import io.helidon.metrics.RegistryFactory;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Flow;
+import java.util.function.Supplier;
+
+/**
+ * Shares one upstream call between concurrent identical requests.
+ * <p>
+ * The first request of a key subscribes to the upstream {@link Single}, requests of the same key that arrive while it
+ * is in flight get the same result. Every request gets a {@code Single} of its own, so a subscriber that cancels only
+ * leaves the shared call. The upstream call is cancelled when the last subscriber has cancelled, and a later request
+ * of the key then starts a new call.
+ * <p>
+ * Publishes a {@code <name>CoalescedCount} counter of requests that joined a call in flight.
+ */
+public class SingleCoalescer<K, V> {
+
+    private final ConcurrentMap<K, Call> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalescedCount;
+
+    public SingleCoalescer(String name) {
+        MetricRegistry appRegistry = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+        this.coalescedCount = appRegistry.counter(name + "CoalescedCount");
+    }
+
+    /**
+     * @param key      identifies identical requests
+     * @param upstream creates the upstream call, only used if no call of the key is in flight
+     */
+    public Single<V> get(K key, Supplier<Single<V>> upstream) {
+        Call created = new Call(key);
+        Call call = inFlight.compute(key, (k, existing) -> existing != null && existing.join() ? existing : created);
+        if (call == created) {
+            try {
+                upstream.get().subscribe(call);
+            } catch (RuntimeException e) {
+                call.onError(e);
+            }
+        } else {
+            coalescedCount.inc();
+        }
+        return Single.create(call.result.copy(), true).onCancel(call::leave);
+    }
+
+    /**
+     * @return number of calls in flight
+     */
+    public int size() {
+        return inFlight.size();
+    }
+
+    private class Call implements Flow.Subscriber<V> {
+        final K key;
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        Flow.Subscription subscription;
+        int subscribers = 1;
+        boolean cancelled;
+
+        Call(K key) {
+            this.key = key;
+        }
+
+        /**
+         * @return false if the call was cancelled and can no longer be joined
+         */
+        synchronized boolean join() {
+            if (cancelled) {
+                return false;
+            }
+            subscribers++;
+            return true;
+        }
+
+        void leave() {
+            Flow.Subscription toCancel;
+            synchronized (this) {
+                if (--subscribers > 0 || result.isDone()) {
+                    return;
+                }
+                cancelled = true;
+                toCancel = subscription;
+            }
+            inFlight.remove(key, this);
+            if (toCancel != null) {
+                toCancel.cancel();
+            }
+            result.completeExceptionally(new CancellationException());
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            boolean cancelNow;
+            synchronized (this) {
+                this.subscription = subscription;
+                cancelNow = cancelled;
+            }
+            if (cancelNow) {
+                subscription.cancel();
+            } else {
+                subscription.request(1);
+            }
+        }
+
+        @Override
+        public void onNext(V item) {
+            inFlight.remove(key, this);
+            result.complete(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            inFlight.remove(key, this);
+            result.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            inFlight.remove(key, this);
+            result.complete(null);
+        }
+    }
+}
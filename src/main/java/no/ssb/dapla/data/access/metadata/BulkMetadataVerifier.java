@@ -0,0 +1,117 @@
+package no.ssb.dapla.data.access.metadata;
+
+import io.helidon.metrics.RegistryFactory;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Verifies batches of signed metadata documents in parallel.
+ * <p>
+ * A batch is split in chunks that are verified on the given executor, each chunk on pooled verifiers of the
+ * {@link MetadataSigner}. The chunks are dealt round robin to at most {@code maxChunksInFlight} lanes that each
+ * verify their chunks one after the other, so a large batch never has more than that many tasks queued on the
+ * executor and cannot starve other work on it, such as write signing. A document that fails verification for any
+ * reason, including an unknown key id or a malformed signature, is reported as invalid without failing the rest of
+ * the batch.
+ */
+public class BulkMetadataVerifier {
+
+    private final MetadataSigner metadataSigner;
+    private final Executor executor;
+    private final int chunkSize;
+    private final int maxChunksInFlight;
+
+    private final Counter verifyMetadataValidCount;
+    private final Counter verifyMetadataInvalidCount;
+
+    /**
+     * @param chunkSize         documents verified by one task on the executor
+     * @param maxChunksInFlight max tasks of one batch that are queued or running on the executor at any time
+     */
+    public BulkMetadataVerifier(MetadataSigner metadataSigner, Executor executor, int chunkSize, int maxChunksInFlight) {
+        this.metadataSigner = metadataSigner;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+        this.maxChunksInFlight = maxChunksInFlight;
+        MetricRegistry appRegistry = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+        this.verifyMetadataValidCount = appRegistry.counter("verifyMetadataValidCount");
+        this.verifyMetadataInvalidCount = appRegistry.counter("verifyMetadataInvalidCount");
+    }
+
+    /**
+     * @return the verification result of every item, in the order of the items
+     */
+    public CompletableFuture<boolean[]> verify(List<Item> items) {
+        boolean[] results = new boolean[items.size()];
+        int chunks = (items.size() + chunkSize - 1) / chunkSize;
+        int lanes = Math.max(1, Math.min(maxChunksInFlight, chunks));
+        List<CompletableFuture<Void>> laneFutures = new ArrayList<>(lanes);
+        try {
+            for (int lane = 0; lane < lanes; lane++) {
+                CompletableFuture<Void> laneFuture = null;
+                for (int chunk = lane; chunk < chunks; chunk += lanes) {
+                    int from = chunk * chunkSize;
+                    int to = Math.min(from + chunkSize, items.size());
+                    Runnable verifyChunk = () -> {
+                        for (int i = from; i < to; i++) {
+                            results[i] = verify(items.get(i));
+                        }
+                    };
+                    laneFuture = laneFuture == null
+                            ? CompletableFuture.runAsync(verifyChunk, executor)
+                            : laneFuture.thenRunAsync(verifyChunk, executor);
+                }
+                if (laneFuture != null) {
+                    laneFutures.add(laneFuture);
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return CompletableFuture.allOf(laneFutures.toArray(CompletableFuture[]::new)).thenApply(v -> results);
+    }
+
+    boolean verify(Item item) {
+        boolean valid;
+        try {
+            if (MerkleBatchSigner.FORMAT.equals(item.format)) {
+                valid = item.keyId != null && MerkleBatchSigner.verify(metadataSigner, item.keyId, item.data, item.signature);
+            } else if (item.keyId != null) {
+                valid = metadataSigner.verify(item.keyId, item.data, item.signature);
+            } else {
+                valid = metadataSigner.verify(item.data, item.signature);
+            }
+        } catch (RuntimeException e) {
+            valid = false;
+        }
+        (valid ? verifyMetadataValidCount : verifyMetadataInvalidCount).inc();
+        return valid;
+    }
+
+    /**
+     * A signed document to verify.
+     */
+    public static class Item {
+        final byte[] data;
+        final byte[] signature;
+        final String keyId;
+        final String format;
+
+        /**
+         * @param keyId  id of the signing key, or null to try all keys
+         * @param format {@link MerkleBatchSigner#FORMAT} for batch signatures, or null for plain signatures
+         */
+        public Item(byte[] data, byte[] signature, String keyId, String format) {
+            this.data = data;
+            this.signature = signature;
+            this.keyId = keyId;
+            this.format = format;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package no.ssb.dapla.data.access.metadata;
+
+import io.helidon.metrics.RegistryFactory;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Histogram;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signs metadata in batches, with one signature over the root of a Merkle tree of the batch.
+ * <p>
+ * Documents that arrive within {@code maxDelay} millis of the first document of a batch, up to {@code maxBatchSize}
+ * documents, share one signature. Every document gets a batch signature of its own, holding its position in the
+ * batch, the sibling hashes on the path to the root and the root signature, so it can be verified on its own with
+ * {@link #verify(MetadataSigner, String, byte[], byte[])}.
+ * <p>
+ * Leaves are {@code SHA-256(0x00 || document)} and inner nodes {@code SHA-256(0x01 || left || right)}. A node without
+ * a sibling is promoted to the next level unchanged. The signed content is {@link #ROOT_PREFIX} followed by the
+ * number of leaves and the root hash, so a root signature can never pass as the signature of a document.
+ * <p>
+ * Batch signature layout: version byte, leaf index (int), leaf count (int), proof hashes (32 bytes each, as many as
+ * the index and count imply), root signature (the remaining bytes).
+ */
+public class MerkleBatchSigner {
+
+    public static final String FORMAT = "merkle-sha256-v1";
+
+    static final byte VERSION = 1;
+    static final byte[] ROOT_PREFIX = (FORMAT + ":").getBytes(StandardCharsets.US_ASCII);
+    static final int HASH_LENGTH = 32;
+
+    private final MetadataSigner metadataSigner;
+    private final Executor signingExecutor;
+    private final int maxBatchSize;
+    private final long maxDelay;
+    private final ScheduledExecutorService batchTimer;
+
+    private final Counter merkleBatchCount;
+    private final Histogram merkleBatchSize;
+
+    private final Object lock = new Object();
+    private Batch current = new Batch();
+
+    /**
+     * @param signingExecutor where batches are hashed and signed
+     * @param maxBatchSize    number of documents that closes a batch
+     * @param maxDelay        millis after its first document that a batch is closed
+     */
+    public MerkleBatchSigner(MetadataSigner metadataSigner, Executor signingExecutor, int maxBatchSize, long maxDelay) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.metadataSigner = metadataSigner;
+        this.signingExecutor = signingExecutor;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelay = maxDelay;
+        this.batchTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "merkle-batch-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        MetricRegistry appRegistry = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+        this.merkleBatchCount = appRegistry.counter("merkleBatchCount");
+        this.merkleBatchSize = appRegistry.histogram("merkleBatchSize");
+    }
+
+    /**
+     * @return the id of the key that batch roots are signed with
+     */
+    public String getActiveKeyId() {
+        return metadataSigner.getActiveKeyId();
+    }
+
+    /**
+     * @return a future batch signature of the given document
+     */
+    public CompletableFuture<byte[]> sign(byte[] data) {
+        CompletableFuture<byte[]> signature = new CompletableFuture<>();
+        Batch full = null;
+        Batch opened = null;
+        synchronized (lock) {
+            current.add(data, signature);
+            if (current.size() >= maxBatchSize) {
+                full = current;
+                current = new Batch();
+            } else if (current.size() == 1) {
+                opened = current;
+            }
+        }
+        if (full != null) {
+            submit(full);
+        } else if (opened != null) {
+            Batch batch = opened;
+            batchTimer.schedule(() -> closeIfCurrent(batch), maxDelay, TimeUnit.MILLISECONDS);
+        }
+        return signature;
+    }
+
+    private void closeIfCurrent(Batch batch) {
+        synchronized (lock) {
+            if (current != batch) {
+                return; // closed by size
+            }
+            current = new Batch();
+        }
+        submit(batch);
+    }
+
+    private void submit(Batch batch) {
+        try {
+            signingExecutor.execute(() -> signBatch(batch));
+        } catch (RejectedExecutionException e) {
+            batch.signatures.forEach(signature -> signature.completeExceptionally(e));
+        }
+    }
+
+    private void signBatch(Batch batch) {
+        try {
+            int leafCount = batch.size();
+            List<byte[][]> levels = buildTree(batch.documents);
+            byte[] root = levels.get(levels.size() - 1)[0];
+            byte[] rootSignature = metadataSigner.sign(signedRootContent(leafCount, root));
+            merkleBatchCount.inc();
+            merkleBatchSize.update(leafCount);
+            for (int i = 0; i < leafCount; i++) {
+                batch.signatures.get(i).complete(encode(i, leafCount, proof(levels, i), rootSignature));
+            }
+        } catch (RuntimeException | Error e) {
+            batch.signatures.forEach(signature -> signature.completeExceptionally(e));
+        }
+    }
+
+    public void close() {
+        batchTimer.shutdownNow();
+    }
+
+    /**
+     * Verify a batch signature of the given document.
+     *
+     * @param keyId the id of the key that signed the batch root
+     * @return true if the document is part of a batch whose root was signed by the key
+     */
+    public static boolean verify(MetadataSigner metadataSigner, String keyId, byte[] data, byte[] batchSignature) {
+        ByteBuffer buffer = ByteBuffer.wrap(batchSignature);
+        if (buffer.remaining() < 9 || buffer.get() != VERSION) {
+            return false;
+        }
+        int index = buffer.getInt();
+        int leafCount = buffer.getInt();
+        if (index < 0 || leafCount < 1 || index >= leafCount) {
+            return false;
+        }
+        byte[] hash = leafHash(data);
+        MessageDigest digest = sha256();
+        for (int levelSize = leafCount; levelSize > 1; levelSize = (levelSize + 1) / 2, index /= 2) {
+            int sibling = index ^ 1;
+            if (sibling >= levelSize) {
+                continue; // promoted
+            }
+            if (buffer.remaining() < HASH_LENGTH) {
+                return false;
+            }
+            byte[] siblingHash = new byte[HASH_LENGTH];
+            buffer.get(siblingHash);
+            hash = (index & 1) == 0 ? nodeHash(digest, hash, siblingHash) : nodeHash(digest, siblingHash, hash);
+        }
+        byte[] rootSignature = new byte[buffer.remaining()];
+        buffer.get(rootSignature);
+        return metadataSigner.verify(keyId, signedRootContent(leafCount, hash), rootSignature);
+    }
+
+    static List<byte[][]> buildTree(List<byte[]> documents) {
+        List<byte[][]> levels = new ArrayList<>();
+        byte[][] level = new byte[documents.size()][];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = leafHash(documents.get(i));
+        }
+        levels.add(level);
+        MessageDigest digest = sha256();
+        while (level.length > 1) {
+            byte[][] parent = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < parent.length; i++) {
+                int left = 2 * i;
+                parent[i] = left + 1 < level.length ? nodeHash(digest, level[left], level[left + 1]) : level[left];
+            }
+            levels.add(parent);
+            level = parent;
+        }
+        return levels;
+    }
+
+    static List<byte[]> proof(List<byte[][]> levels, int index) {
+        List<byte[]> proof = new ArrayList<>();
+        for (int l = 0; l < levels.size() - 1; l++, index /= 2) {
+            int sibling = index ^ 1;
+            if (sibling < levels.get(l).length) {
+                proof.add(levels.get(l)[sibling]);
+            }
+        }
+        return proof;
+    }
+
+    static byte[] encode(int index, int leafCount, List<byte[]> proof, byte[] rootSignature) {
+        ByteBuffer buffer = ByteBuffer.allocate(9 + proof.size() * HASH_LENGTH + rootSignature.length);
+        buffer.put(VERSION).putInt(index).putInt(leafCount);
+        proof.forEach(buffer::put);
+        buffer.put(rootSignature);
+        return buffer.array();
+    }
+
+    static byte[] signedRootContent(int leafCount, byte[] root) {
+        return ByteBuffer.allocate(ROOT_PREFIX.length + 4 + root.length)
+                .put(ROOT_PREFIX)
+                .putInt(leafCount)
+                .put(root)
+                .array();
+    }
+
+    static byte[] leafHash(byte[] data) {
+        MessageDigest digest = sha256();
+        digest.update((byte) 0);
+        return digest.digest(data);
+    }
+
+    static byte[] nodeHash(MessageDigest digest, byte[] left, byte[] right) {
+        digest.update((byte) 1);
+        digest.update(left);
+        return digest.digest(right);
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static class Batch {
+        final List<byte[]> documents = new ArrayList<>();
+        final List<CompletableFuture<byte[]>> signatures = new ArrayList<>();
+
+        void add(byte[] document, CompletableFuture<byte[]> signature) {
+            documents.add(Arrays.copyOf(document, document.length));
+            signatures.add(signature);
+        }
+
+        int size() {
+            return documents.size();
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package no.ssb.dapla.data.access.metadata;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.util.JsonFormat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Serializes metadata to the JSON documents that are signed and returned to clients.
+ * <p>
+ * The printer appends to a {@link Utf8Buffer}, which encodes the characters as UTF-8 straight into a byte array that
+ * is sized from the binary encoding of the message, so that a document usually needs one array and no encoder or
+ * intermediate string. The array is wrapped, not copied, as the returned {@code ByteString}. The same bytes are then
+ * signed through {@link MetadataSigner#sign(ByteString)} and set on the response.
+ * <p>
+ * The printer has the same configuration as {@code ProtobufJsonUtils}, so the bytes are identical to those of
+ * {@code ProtobufJsonUtils.toString(message)}.
+ */
+public class MetadataJson {
+
+    private static final JsonFormat.Printer PRINTER = JsonFormat.printer();
+
+    private MetadataJson() {
+    }
+
+    public static ByteString toJson(Message message) {
+        // field names and quoting make the JSON roughly twice the size of the binary encoding
+        Utf8Buffer buffer = new Utf8Buffer(2 * message.getSerializedSize() + 64);
+        try {
+            PRINTER.appendTo(message, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteString();
+    }
+
+    /**
+     * Encodes appended characters as UTF-8 into a growing byte array. Unpaired surrogates are encoded as {@code '?'},
+     * as the JDK encoder does.
+     */
+    static class Utf8Buffer implements Appendable {
+
+        private byte[] bytes;
+        private int size;
+        private char highSurrogate;
+
+        Utf8Buffer(int capacity) {
+            bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        @Override
+        public Utf8Buffer append(CharSequence csq) {
+            return append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Utf8Buffer append(CharSequence csq, int start, int end) {
+            for (int i = start; i < end; i++) {
+                append(csq.charAt(i));
+            }
+            return this;
+        }
+
+        @Override
+        public Utf8Buffer append(char c) {
+            if (highSurrogate != 0) {
+                char high = highSurrogate;
+                highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int codePoint = Character.toCodePoint(high, c);
+                    ensureCapacity(4);
+                    bytes[size++] = (byte) (0xF0 | (codePoint >>> 18));
+                    bytes[size++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+                    bytes[size++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+                    bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+                    return this;
+                }
+                ensureCapacity(1);
+                bytes[size++] = '?';
+            }
+            if (c < 0x80) {
+                ensureCapacity(1);
+                bytes[size++] = (byte) c;
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                bytes[size++] = (byte) (0xC0 | (c >>> 6));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                ensureCapacity(1);
+                bytes[size++] = '?';
+            } else {
+                ensureCapacity(3);
+                bytes[size++] = (byte) (0xE0 | (c >>> 12));
+                bytes[size++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+            return this;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, size + extra));
+            }
+        }
+
+        /**
+         * @return the encoded bytes, wrapping the buffer, which must not be appended to afterwards
+         */
+        ByteString toByteString() {
+            if (highSurrogate != 0) {
+                highSurrogate = 0;
+                ensureCapacity(1);
+                bytes[size++] = '?';
+            }
+            return UnsafeByteOperations.unsafeWrap(bytes, 0, size);
+        }
+    }
+}
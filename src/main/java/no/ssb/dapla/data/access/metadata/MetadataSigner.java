@@ -1,56 +1,269 @@
 package no.ssb.dapla.data.access.metadata;
 
+import com.google.protobuf.ByteString;
+import io.helidon.metrics.RegistryFactory;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.Timer;
+
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
+import java.security.Key;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Signature;
-import java.security.SignatureException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Signs and verifies metadata with key pairs from a keystore. Safe for use by concurrent threads: the keystore is
+ * loaded once, and each operation runs on a pooled {@link Signature} instance of its own.
+ * <p>
+ * Several keys can be loaded, each identified by a key id. Metadata is always signed with the active key, while
+ * signatures made with any of the loaded keys can still be verified, so keys can be rotated without invalidating
+ * metadata that is already written. RSA, ECDSA and EdDSA (Ed25519) keys are supported.
+ */
 public class MetadataSigner {
 
-    final Signature signer;
-    final Signature verifier;
+    private final Map<String, SigningKey> keys;
+    private final SigningKey activeKey;
+    private final Timer metadataSignTimer;
+    private final Timer metadataVerifyTimer;
 
+    /**
+     * Single key signer, the key alias is used as key id.
+     */
     public MetadataSigner(String keystoreFormat, String keystorePath, String keyAlias, char[] password, String algorithm) {
-        try {
-            KeyStore keyStore = KeyStore.getInstance(keystoreFormat);
-            keyStore.load(new FileInputStream(keystorePath), password);
-            PrivateKey privateKey = (PrivateKey) keyStore.getKey(keyAlias, password);
-            Certificate certificate = keyStore.getCertificate(keyAlias);
-            PublicKey publicKey = certificate.getPublicKey();
-
-            signer = Signature.getInstance(algorithm);
-            signer.initSign(privateKey);
-            verifier = Signature.getInstance(algorithm);
-            verifier.initVerify(publicKey);
-        } catch (NoSuchAlgorithmException | CertificateException | KeyStoreException | InvalidKeyException | UnrecoverableKeyException | IOException e) {
+        this(keystoreFormat, keystorePath, password, List.of(new KeyConfig(keyAlias, keyAlias, algorithm)), keyAlias);
+    }
+
+    /**
+     * @param keyConfigs  the keys to load
+     * @param activeKeyId id of the key to sign with, the keystore must hold its private key
+     */
+    public MetadataSigner(String keystoreFormat, String keystorePath, char[] password, List<KeyConfig> keyConfigs, String activeKeyId) {
+        KeyStore keyStore;
+        try (InputStream keystoreStream = new FileInputStream(keystorePath)) {
+            keyStore = KeyStore.getInstance(keystoreFormat);
+            keyStore.load(keystoreStream, password);
+        } catch (NoSuchAlgorithmException | CertificateException | KeyStoreException | IOException e) {
             throw new RuntimeException(e);
         }
+        Map<String, SigningKey> keys = new LinkedHashMap<>();
+        for (KeyConfig keyConfig : keyConfigs) {
+            keys.put(keyConfig.keyId, SigningKey.load(keyStore, keyConfig, password));
+        }
+        this.keys = Collections.unmodifiableMap(keys);
+        this.activeKey = keys.get(activeKeyId);
+        if (activeKey == null) {
+            throw new IllegalArgumentException("Active key id is not configured: " + activeKeyId);
+        }
+        if (activeKey.signers == null) {
+            throw new IllegalArgumentException("No private key in keystore for active key id: " + activeKeyId);
+        }
+        MetricRegistry appRegistry = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+        this.metadataSignTimer = appRegistry.timer("metadataSignTimer");
+        this.metadataVerifyTimer = appRegistry.timer("metadataVerifyTimer");
+    }
+
+    /**
+     * @return the id of the key that {@link #sign(byte[])} signs with
+     */
+    public String getActiveKeyId() {
+        return activeKey.keyId;
+    }
+
+    public Set<String> getKeyIds() {
+        return keys.keySet();
     }
 
     public byte[] sign(byte[] data) {
+        Timer.Context timer = metadataSignTimer.time();
         try {
-            signer.update(data);
-            return signer.sign();
-        } catch (SignatureException e) {
-            throw new RuntimeException(e);
+            return activeKey.signers.apply(signer -> {
+                signer.update(data);
+                return signer.sign();
+            });
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Sign the bytes of the given string in place, without copying them to an array first.
+     */
+    public byte[] sign(ByteString data) {
+        Timer.Context timer = metadataSignTimer.time();
+        try {
+            return activeKey.signers.apply(signer -> {
+                for (ByteBuffer buffer : data.asReadOnlyByteBufferList()) {
+                    signer.update(buffer);
+                }
+                return signer.sign();
+            });
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Verify a signature made with the key of the given id.
+     *
+     * @throws IllegalArgumentException if the key id is unknown
+     */
+    public boolean verify(String keyId, byte[] data, byte[] receivedSign) {
+        SigningKey key = keys.get(keyId);
+        if (key == null) {
+            throw new IllegalArgumentException("Unknown key id: " + keyId);
+        }
+        Timer.Context timer = metadataVerifyTimer.time();
+        try {
+            return key.verify(data, receivedSign);
+        } finally {
+            timer.stop();
         }
     }
 
+    /**
+     * Verify a signature of unknown key id, trying the active key first and then the other keys.
+     */
     public boolean verify(byte[] data, byte[] receivedSign) {
+        Timer.Context timer = metadataVerifyTimer.time();
         try {
-            verifier.update(data);
-            return verifier.verify(receivedSign);
-        } catch (SignatureException e) {
-            throw new RuntimeException(e);
+            if (activeKey.verifyQuietly(data, receivedSign)) {
+                return true;
+            }
+            for (SigningKey key : keys.values()) {
+                if (key != activeKey && key.verifyQuietly(data, receivedSign)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Map a key algorithm to the signature algorithm used when none is configured.
+     */
+    static String defaultSignatureAlgorithm(String keyAlgorithm) {
+        switch (keyAlgorithm) {
+            case "RSA":
+                return "SHA256withRSA";
+            case "EC":
+                return "SHA256withECDSA";
+            case "EdDSA":
+            case "Ed25519":
+                return "Ed25519";
+            default:
+                throw new IllegalArgumentException("Unsupported key algorithm: " + keyAlgorithm);
+        }
+    }
+
+    /**
+     * A key to load from the keystore.
+     */
+    public static class KeyConfig {
+        final String keyId;
+        final String alias;
+        final String algorithm;
+
+        /**
+         * @param algorithm the signature algorithm, or null to derive it from the key
+         */
+        public KeyConfig(String keyId, String alias, String algorithm) {
+            this.keyId = keyId;
+            this.alias = alias;
+            this.algorithm = algorithm;
+        }
+    }
+
+    static class SigningKey {
+        final String keyId;
+        final String algorithm;
+        final SignaturePool signers;
+        final SignaturePool verifiers;
+
+        private SigningKey(String keyId, String algorithm, PrivateKey privateKey, PublicKey publicKey) {
+            this.keyId = keyId;
+            this.algorithm = algorithm;
+            int maxIdle = Runtime.getRuntime().availableProcessors() * 2;
+            this.signers = privateKey == null ? null : new SignaturePool(() -> {
+                Signature signer = newSignature(algorithm);
+                try {
+                    signer.initSign(privateKey);
+                } catch (InvalidKeyException e) {
+                    throw new RuntimeException(e);
+                }
+                return signer;
+            }, maxIdle);
+            this.verifiers = new SignaturePool(() -> {
+                Signature verifier = newSignature(algorithm);
+                try {
+                    verifier.initVerify(publicKey);
+                } catch (InvalidKeyException e) {
+                    throw new RuntimeException(e);
+                }
+                return verifier;
+            }, maxIdle);
+            // fail on startup rather than on first use if the key does not fit the algorithm
+            if (signers != null) {
+                signers.apply(signer -> null);
+            }
+            verifiers.apply(verifier -> null);
+        }
+
+        static SigningKey load(KeyStore keyStore, KeyConfig keyConfig, char[] password) {
+            try {
+                Certificate certificate = keyStore.getCertificate(keyConfig.alias);
+                if (certificate == null) {
+                    throw new IllegalArgumentException("No certificate in keystore for alias: " + keyConfig.alias);
+                }
+                PublicKey publicKey = certificate.getPublicKey();
+                Key key = keyStore.isKeyEntry(keyConfig.alias) ? keyStore.getKey(keyConfig.alias, password) : null;
+                String algorithm = keyConfig.algorithm != null ? keyConfig.algorithm : defaultSignatureAlgorithm(publicKey.getAlgorithm());
+                return new SigningKey(keyConfig.keyId, algorithm, (PrivateKey) key, publicKey);
+            } catch (NoSuchAlgorithmException | KeyStoreException | UnrecoverableKeyException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        boolean verify(byte[] data, byte[] receivedSign) {
+            return verifiers.apply(verifier -> {
+                verifier.update(data);
+                return verifier.verify(receivedSign);
+            });
+        }
+
+        /**
+         * Verify, treating a signature that is malformed for this key as not matching.
+         */
+        boolean verifyQuietly(byte[] data, byte[] receivedSign) {
+            try {
+                return verify(data, receivedSign);
+            } catch (RuntimeException e) {
+                return false;
+            }
+        }
+
+        private static Signature newSignature(String algorithm) {
+            try {
+                return Signature.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
         }
     }
 }
@@ -0,0 +1,56 @@
+package no.ssb.dapla.data.access.metadata;
+
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Pool of initialized {@link Signature} instances.
+ * <p>
+ * A {@code Signature} is stateful and must only be used by one thread at a time, but it returns to its initialized
+ * state after {@code sign()} or {@code verify()} and can then be reused. Every operation borrows an instance, so
+ * concurrent callers never share one, and instances are only created when all pooled ones are in use. At most
+ * {@code maxIdle} instances are kept between operations.
+ */
+class SignaturePool {
+
+    private final Supplier<Signature> factory;
+    private final int maxIdle;
+    private final Queue<Signature> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    SignaturePool(Supplier<Signature> factory, int maxIdle) {
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+    }
+
+    <T> T apply(SignatureFunction<T> function) {
+        Signature signature = idle.poll();
+        if (signature == null) {
+            signature = factory.get();
+        } else {
+            idleCount.decrementAndGet();
+        }
+        T result;
+        try {
+            result = function.apply(signature);
+        } catch (SignatureException e) {
+            // the instance may be left half way through an operation, let it go
+            throw new RuntimeException(e);
+        }
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(signature);
+        } else {
+            idleCount.decrementAndGet();
+        }
+        return result;
+    }
+
+    @FunctionalInterface
+    interface SignatureFunction<T> {
+        T apply(Signature signature) throws SignatureException;
+    }
+}
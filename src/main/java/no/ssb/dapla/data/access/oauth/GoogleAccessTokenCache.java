@@ -0,0 +1,227 @@
+package no.ssb.dapla.data.access.oauth;
+
+import io.helidon.metrics.RegistryFactory;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process cache of minted access tokens keyed by (key file, scope, lifetime).
+ * <p>
+ * A cached token is served as long as it has more than {@code minRemaining} millis left. Every minted token also
+ * schedules a background refresh {@code refreshAhead} millis before it expires, so tokens that are in use are
+ * replaced before the request path ever has to mint one. Tokens that have not been served since the previous refresh
+ * are dropped instead of refreshed.
+ * <p>
+ * Concurrent misses for the same key share a single in-flight mint, so a burst of requests on a cold or expired
+ * key results in exactly one call to the token endpoint. Mints run on the given executor so that callers on the
+ * webserver threads are never blocked by the token endpoint.
+ */
+public class GoogleAccessTokenCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GoogleAccessTokenCache.class);
+
+    /**
+     * Mints a new token for the given key file and scope, blocking until the token endpoint has answered.
+     */
+    @FunctionalInterface
+    public interface TokenMinter {
+        GoogleCredentialsDetails mint(String jsonPath, int lifetime, String scope);
+    }
+
+    private final ConcurrentMap<TokenKey, CachedToken> tokens = new ConcurrentHashMap<>();
+    private final ConcurrentMap<TokenKey, CompletableFuture<GoogleCredentialsDetails>> inFlight = new ConcurrentHashMap<>();
+    private final TokenMinter minter;
+    private final Executor mintExecutor;
+    private final long minRemaining;
+    private final long refreshAhead;
+    private final ScheduledExecutorService refresher;
+
+    private final Counter tokenCacheHitCount;
+    private final Counter tokenCacheMissCount;
+    private final Counter tokenCacheCoalescedCount;
+    private final Counter tokenCacheRefreshCount;
+    private final Counter tokenCacheRefreshErrorCount;
+
+    /**
+     * @param minter       mints tokens on a miss or a refresh
+     * @param mintExecutor runs the blocking mints of cache misses
+     * @param minRemaining cached tokens with less lifetime than this (millis) are not served
+     * @param refreshAhead tokens are refreshed in the background this many millis before they expire
+     */
+    public GoogleAccessTokenCache(TokenMinter minter, Executor mintExecutor, long minRemaining, long refreshAhead) {
+        if (refreshAhead <= minRemaining) {
+            throw new IllegalArgumentException("refreshAhead (" + refreshAhead + ") must be larger than minRemaining ("
+                    + minRemaining + ") or tokens will be minted on the request path");
+        }
+        this.minter = minter;
+        this.mintExecutor = mintExecutor;
+        this.minRemaining = minRemaining;
+        this.refreshAhead = refreshAhead;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "access-token-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        RegistryFactory metricsRegistry = RegistryFactory.getInstance();
+        MetricRegistry appRegistry = metricsRegistry.getRegistry(MetricRegistry.Type.APPLICATION);
+        this.tokenCacheHitCount = appRegistry.counter("tokenCacheHitCount");
+        this.tokenCacheMissCount = appRegistry.counter("tokenCacheMissCount");
+        this.tokenCacheCoalescedCount = appRegistry.counter("tokenCacheCoalescedCount");
+        this.tokenCacheRefreshCount = appRegistry.counter("tokenCacheRefreshCount");
+        this.tokenCacheRefreshErrorCount = appRegistry.counter("tokenCacheRefreshErrorCount");
+    }
+
+    /**
+     * Get a token with at least {@code minRemaining} millis of lifetime left, minting one if none is cached. If
+     * another caller is already minting a token for the same key, the returned future completes with that token.
+     */
+    public CompletableFuture<GoogleCredentialsDetails> get(String jsonPath, int lifetime, String scope) {
+        TokenKey key = new TokenKey(jsonPath, lifetime, scope);
+        GoogleCredentialsDetails cached = getCached(key);
+        if (cached != null) {
+            tokenCacheHitCount.inc();
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<GoogleCredentialsDetails> mint = new CompletableFuture<>();
+        CompletableFuture<GoogleCredentialsDetails> pending = inFlight.putIfAbsent(key, mint);
+        if (pending != null) {
+            tokenCacheCoalescedCount.inc();
+            // copy, so that a caller applying a timeout does not complete the shared future for everyone else
+            return pending.copy();
+        }
+        tokenCacheMissCount.inc();
+        try {
+            mintExecutor.execute(() -> mint(key, mint));
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, mint);
+            mint.completeExceptionally(e);
+        }
+        return mint.copy();
+    }
+
+    private GoogleCredentialsDetails getCached(TokenKey key) {
+        CachedToken cached = tokens.get(key);
+        if (cached != null && cached.isUsable(System.currentTimeMillis(), minRemaining)) {
+            cached.touched = true;
+            return cached.details;
+        }
+        return null;
+    }
+
+    private void mint(TokenKey key, CompletableFuture<GoogleCredentialsDetails> mint) {
+        try {
+            // another mint may have completed between the cache lookup and claiming the in-flight slot
+            GoogleCredentialsDetails details = getCached(key);
+            if (details == null) {
+                details = minter.mint(key.jsonPath, key.lifetime, key.scope);
+                CachedToken minted = new CachedToken(details);
+                minted.touched = true;
+                tokens.put(key, minted);
+                scheduleRefresh(key, minted);
+            }
+            mint.complete(details);
+        } catch (RuntimeException | Error e) {
+            mint.completeExceptionally(e);
+        } finally {
+            // the token is in the cache before the slot is released, so late callers never mint again
+            inFlight.remove(key, mint);
+        }
+    }
+
+    /**
+     * Drop all cached tokens, e.g. after the key files have been rotated.
+     */
+    public void invalidateAll() {
+        tokens.clear();
+    }
+
+    /**
+     * Drop all cached tokens minted from the given key file.
+     */
+    public void invalidate(String jsonPath) {
+        tokens.keySet().removeIf(key -> Objects.equals(key.jsonPath, jsonPath));
+    }
+
+    private void scheduleRefresh(TokenKey key, CachedToken token) {
+        long delay = token.details.getExpirationTime() - refreshAhead - System.currentTimeMillis();
+        refresher.schedule(() -> refresh(key, token), Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh(TokenKey key, CachedToken previous) {
+        if (tokens.get(key) != previous) {
+            return; // replaced or invalidated since this refresh was scheduled
+        }
+        if (!previous.touched) {
+            // nobody asked for this token since the last refresh, let it expire
+            tokens.remove(key, previous);
+            return;
+        }
+        try {
+            CachedToken refreshed = new CachedToken(minter.mint(key.jsonPath, key.lifetime, key.scope));
+            if (tokens.replace(key, previous, refreshed)) {
+                scheduleRefresh(key, refreshed);
+            }
+            tokenCacheRefreshCount.inc();
+        } catch (RuntimeException | Error e) {
+            tokenCacheRefreshErrorCount.inc();
+            LOG.warn("Unable to refresh access token for key file {} and scope {}", key.jsonPath, key.scope, e);
+            // keep serving the previous token while it is still usable, the next request will mint on demand
+        }
+    }
+
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    static class CachedToken {
+        final GoogleCredentialsDetails details;
+        volatile boolean touched;
+
+        CachedToken(GoogleCredentialsDetails details) {
+            this.details = details;
+        }
+
+        boolean isUsable(long now, long minRemaining) {
+            return details.getExpirationTime() - now > minRemaining;
+        }
+    }
+
+    static class TokenKey {
+        final String jsonPath;
+        final int lifetime;
+        final String scope;
+
+        TokenKey(String jsonPath, int lifetime, String scope) {
+            this.jsonPath = jsonPath;
+            this.lifetime = lifetime;
+            this.scope = scope;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TokenKey tokenKey = (TokenKey) o;
+            return lifetime == tokenKey.lifetime &&
+                    Objects.equals(jsonPath, tokenKey.jsonPath) &&
+                    Objects.equals(scope, tokenKey.scope);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(jsonPath, lifetime, scope);
+        }
+    }
+}
@@ -23,8 +23,10 @@ import com.google.auth.oauth2.ServiceAccountCredentials;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 public class GoogleCredentialsFactory {
 
@@ -32,20 +34,33 @@ public class GoogleCredentialsFactory {
 
     public static GoogleCredentialsDetails createCredentialsDetails(boolean useComputeEngineFallback, String jsonPath,
                                                                     int customLifetime, String... scopes) {
+        ServiceAccountCredentials serviceAccountCredentials = null;
+        if (jsonPath != null) {
+            LOG.info("Using Service Account key file: " + jsonPath);
+            serviceAccountCredentials = loadServiceAccountCredentials(Path.of(jsonPath));
+        }
+        return createCredentialsDetails(useComputeEngineFallback, serviceAccountCredentials, customLifetime, scopes);
+    }
+
+    /**
+     * Mint an access token from already parsed service account credentials.
+     *
+     * @param serviceAccountCredentials the unscoped credentials of the key file, or null to use the fallback
+     */
+    public static GoogleCredentialsDetails createCredentialsDetails(boolean useComputeEngineFallback,
+                                                                    ServiceAccountCredentials serviceAccountCredentials,
+                                                                    int customLifetime, String... scopes) {
         try {
             GoogleCredentials credentials;
             String email;
-            if (jsonPath != null) {
-                LOG.info("Using Service Account key file: " + jsonPath);
+            if (serviceAccountCredentials != null) {
                 if (customLifetime > 0) {
                     LOG.info("Setting custom lifetime: " + customLifetime);
-                    credentials = ServiceAccountCredentials
-                            .fromStream(new FileInputStream(jsonPath))
+                    credentials = serviceAccountCredentials
                             .createWithCustomLifetime(customLifetime)
                             .createScoped(scopes);
                 } else {
-                    credentials = ServiceAccountCredentials
-                            .fromStream(new FileInputStream(jsonPath))
+                    credentials = serviceAccountCredentials
                             .createScoped(scopes);
                 }
                 email = ((ServiceAccountCredentials) credentials).getAccount();
@@ -65,4 +80,15 @@ public class GoogleCredentialsFactory {
         }
     }
 
+    /**
+     * Read and parse a service account key file.
+     */
+    public static ServiceAccountCredentials loadServiceAccountCredentials(Path jsonPath) {
+        try (InputStream inputStream = Files.newInputStream(jsonPath)) {
+            return ServiceAccountCredentials.fromStream(inputStream);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read service account key file: " + jsonPath, e);
+        }
+    }
+
 }
@@ -0,0 +1,98 @@
+package no.ssb.dapla.data.access.oauth;
+
+import com.google.auth.oauth2.ServiceAccountCredentials;
+import io.helidon.metrics.RegistryFactory;
+import no.ssb.dapla.data.access.watch.FileWatcher;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Parsed service account key files, loaded once and reloaded when the files change on disk.
+ * <p>
+ * Key files are watched with a {@link FileWatcher}, so mounted secret rotation is picked up without parsing the
+ * key file on every request. Rotated credentials are swapped in atomically, and a key file that cannot be parsed
+ * leaves the current credentials in place.
+ */
+public class GoogleCredentialsRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GoogleCredentialsRegistry.class);
+
+    private final ConcurrentMap<String, ServiceAccountCredentials> credentials = new ConcurrentHashMap<>();
+    private final Consumer<String> onReload;
+    private final FileWatcher fileWatcher;
+
+    private final Counter credentialsReloadCount;
+    private final Counter credentialsReloadErrorCount;
+
+    /**
+     * @param onReload     called with the key file path after its credentials have been swapped
+     * @param pollInterval millis between polling checks of all key files, 0 or less to disable polling
+     */
+    public GoogleCredentialsRegistry(Consumer<String> onReload, long pollInterval) {
+        this.onReload = onReload;
+        RegistryFactory metricsRegistry = RegistryFactory.getInstance();
+        MetricRegistry appRegistry = metricsRegistry.getRegistry(MetricRegistry.Type.APPLICATION);
+        this.credentialsReloadCount = appRegistry.counter("credentialsReloadCount");
+        this.credentialsReloadErrorCount = appRegistry.counter("credentialsReloadErrorCount");
+        this.fileWatcher = new FileWatcher("credentials", pollInterval, path -> reload(path.toString()));
+    }
+
+    /**
+     * Load the given key files up front. Files that cannot be read are logged and retried on first use.
+     */
+    public void preload(Collection<String> jsonPaths) {
+        for (String jsonPath : jsonPaths) {
+            try {
+                get(jsonPath);
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to preload service account key file {}", jsonPath, e);
+            }
+        }
+    }
+
+    /**
+     * Get the parsed credentials of the given key file, loading and watching the file on first use.
+     */
+    public ServiceAccountCredentials get(String jsonPath) {
+        ServiceAccountCredentials loaded = credentials.get(jsonPath);
+        if (loaded == null) {
+            // watch before loading, so that a change while loading is not missed
+            fileWatcher.watch(Path.of(jsonPath));
+            loaded = credentials.computeIfAbsent(jsonPath, this::load);
+        }
+        return loaded;
+    }
+
+    private ServiceAccountCredentials load(String jsonPath) {
+        LOG.info("Loading service account key file: {}", jsonPath);
+        return GoogleCredentialsFactory.loadServiceAccountCredentials(Path.of(jsonPath));
+    }
+
+    private void reload(String jsonPath) {
+        if (!credentials.containsKey(jsonPath)) {
+            return; // never loaded successfully, will be loaded on first use
+        }
+        try {
+            credentials.put(jsonPath, load(jsonPath));
+            credentialsReloadCount.inc();
+            LOG.info("Reloaded rotated service account key file: {}", jsonPath);
+            onReload.accept(jsonPath);
+        } catch (RuntimeException e) {
+            // a rotation may be in progress, keep the current credentials and try again on the next change
+            credentialsReloadErrorCount.inc();
+            LOG.warn("Unable to reload service account key file {}, keeping the current credentials", jsonPath, e);
+        }
+    }
+
+    public void close() {
+        fileWatcher.close();
+    }
+}
@@ -6,18 +6,48 @@ import no.ssb.dapla.dataset.api.DatasetState;
 import no.ssb.dapla.dataset.api.Valuation;
 
 import java.net.URI;
-import java.util.Collections;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Function;
 
 public abstract class AbstractDataAccessService implements DataAccessService {
 
-    private final Config routing;
+    static final long DEFAULT_ROUTE_CACHE_SIZE = 10_000;
+
+    private final long routeCacheSize;
+
+    /**
+     * The routing table and its resolution cache, swapped as a whole when the routing file is reloaded. Every lookup
+     * reads it once.
+     */
+    private volatile RouteCache routes;
 
     public AbstractDataAccessService(Config config) {
-        routing = config.get("routing").detach();
+        this(config, DEFAULT_ROUTE_CACHE_SIZE);
+    }
+
+    public AbstractDataAccessService(Config config, long routeCacheSize) {
+        this.routeCacheSize = routeCacheSize;
+        this.routes = new RouteCache(RoutingTable.create(config), routeCacheSize);
+    }
+
+    public RoutingTable getRoutingTable() {
+        return routes.getRoutingTable();
+    }
+
+    /**
+     * Replace the active routing table and drop all cached route resolutions. Lookups in progress complete against
+     * the table they started with.
+     */
+    public void setRoutingTable(RoutingTable routingTable) {
+        this.routes = new RouteCache(routingTable, routeCacheSize);
+        onRoutingTableChanged(routingTable);
+    }
+
+    /**
+     * Called after the routing table has been replaced.
+     */
+    protected void onRoutingTableChanged(RoutingTable routingTable) {
     }
 
     @Override
@@ -35,6 +65,20 @@ public abstract class AbstractDataAccessService implements DataAccessService {
         return CompletableFuture.completedFuture(getRoute(path, valuation, state).getUri());
     }
 
+    /**
+     * Write tokens of gs routes are minted from the route's write key file. Routes without a write key file and
+     * other schemes are not shared.
+     */
+    @Override
+    public Object getWriteCredentialsKey(String path, Valuation valuation, DatasetState state) {
+        Route route = getRoute(path, valuation, state);
+        String writeKeyFile = route.getAuth().get("write");
+        if (writeKeyFile == null || !"gs".equals(route.getUri().getScheme())) {
+            return null;
+        }
+        return List.of(route.getUri().getScheme(), writeKeyFile);
+    }
+
     /**
      * Find the first matching route based on the given source parameters
      *
@@ -44,9 +88,12 @@ public abstract class AbstractDataAccessService implements DataAccessService {
      * @return the first matching route
      */
     Route getRoute(String path, Valuation valuation, DatasetState state) {
-        return route(path, valuation, state).orElseThrow(() ->
-                new NoSuchElementException("Could not find route for path: " + path + " with valuation " + valuation +
-                        " and state " + state));
+        Route route = routes.route(path, valuation, state);
+        if (route == null) {
+            throw new NoSuchElementException("Could not find route for path: " + path + " with valuation " + valuation +
+                    " and state " + state);
+        }
+        return route;
     }
 
     /**
@@ -57,42 +104,18 @@ public abstract class AbstractDataAccessService implements DataAccessService {
      * @return the first matching route
      */
     Route getRoute(String scheme, String host) {
-        return routing.asNodeList().orElseThrow(() ->
-                new RuntimeException("Route configuration is missing")).stream().filter(route ->
-                route.get("target").get("uri").get("scheme").asString().get().equals(scheme) &&
-                        route.get("target").get("uri").get("host").asString().get().equals(host)
-        ).findFirst().map(Route::new).orElseThrow(() ->
-                new NoSuchElementException("Could not find target: " + scheme + "://" + host));
-    }
-
-    private Optional<Route> route(String path, Valuation valuation, DatasetState state) {
-        return routing.asNodeList().orElseThrow(() ->
-                new RuntimeException("Route configuration is missing")).stream().filter(route ->
-                matchRoutingEntry(path, valuation, state, route.get("source"))).findFirst().map(Route::new);
-    }
-
-    private boolean matchRoutingEntry(String path, Valuation valuation, DatasetState state,
-                                      Config source) {
-        if (source.get("paths").exists() && !match(source.get("paths"), path::startsWith)) {
-            return false;
-        }
-        if (source.get("valuations").exists() && !match(source.get("valuations"), valuation.name()::equalsIgnoreCase)) {
-            return false;
-        }
-        if (source.get("states").exists() && !match(source.get("states"), state.name()::equalsIgnoreCase)) {
-            return false;
+        Route route = routes.getRoutingTable().route(scheme, host);
+        if (route == null) {
+            throw new NoSuchElementException("Could not find target: " + scheme + "://" + host);
         }
-        return true; // all criteria matched
+        return route;
     }
 
-    private boolean match(Config criterionNode, Function<String, Boolean> matcher) {
-        if (criterionNode.get("excludes").asList(String.class).orElseGet(Collections::emptyList).stream().anyMatch(v -> matcher.apply(v))) {
-            return false;
-        }
-        if (!criterionNode.get("includes").exists() || criterionNode.get("includes").asList(String.class).get().stream().anyMatch(v -> matcher.apply(v))) {
-            return true;
-        }
-        return false; // non-empty include set, but no matches
+    /**
+     * All routes in the routing table, in order
+     */
+    List<Route> getRoutes() {
+        return routes.getRoutingTable().getRoutes();
     }
 
 }
@@ -0,0 +1,38 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.common.http.MediaType;
+import io.helidon.webserver.Routing;
+import io.helidon.webserver.ServerRequest;
+import io.helidon.webserver.ServerResponse;
+import io.helidon.webserver.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admin endpoint that flushes the cached access decisions of one user: {@code DELETE /admin/access-cache/{userId}}.
+ * It has no authentication of its own and is only registered on the admin socket of the webserver, see
+ * {@code webserver.admin}.
+ */
+public class AccessCacheAdminService implements Service {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AccessCacheAdminService.class);
+
+    private final CachingUserAccessClient accessCache;
+
+    public AccessCacheAdminService(CachingUserAccessClient accessCache) {
+        this.accessCache = accessCache;
+    }
+
+    @Override
+    public void update(Routing.Rules rules) {
+        rules.delete("/admin/access-cache/{userId}", this::flush);
+    }
+
+    void flush(ServerRequest req, ServerResponse res) {
+        String userId = req.path().param("userId");
+        int flushed = accessCache.flush(userId);
+        LOG.info("Flushed {} cached access decisions of user {}", flushed, userId);
+        res.headers().contentType(MediaType.APPLICATION_JSON);
+        res.status(200).send("{\"flushed\":" + flushed + "}");
+    }
+}
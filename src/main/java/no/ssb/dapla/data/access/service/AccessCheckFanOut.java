@@ -0,0 +1,42 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.common.reactive.Single;
+import no.ssb.dapla.auth.dataset.protobuf.AccessCheckRequest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs a bulk access check as single checks of a {@link UserAccessClient}, with bounded parallelism.
+ * <p>
+ * The checks are dealt round robin to at most {@code parallelism} lanes, and each lane runs its checks one after
+ * the other, so no more than {@code parallelism} checks are in flight at any time.
+ */
+final class AccessCheckFanOut {
+
+    private AccessCheckFanOut() {
+    }
+
+    /**
+     * @return whether each check is allowed, in the order of the checks
+     */
+    static Single<List<Boolean>> hasAccess(UserAccessClient client, List<AccessCheckRequest> checks, String jwtToken, int parallelism) {
+        Boolean[] decisions = new Boolean[checks.size()];
+        int lanes = Math.max(1, Math.min(parallelism, checks.size()));
+        CompletableFuture<?>[] laneFutures = new CompletableFuture<?>[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            CompletableFuture<Void> laneFuture = CompletableFuture.completedFuture(null);
+            for (int i = lane; i < checks.size(); i += lanes) {
+                int index = i;
+                AccessCheckRequest check = checks.get(index);
+                laneFuture = laneFuture
+                        .thenCompose(previous -> client.hasAccess(check.getUserId(), check.getPrivilege(), check.getPath(),
+                                check.getValuation(), check.getState(), jwtToken).toStage())
+                        .thenAccept(allowed -> decisions[index] = allowed);
+            }
+            laneFutures[lane] = laneFuture;
+        }
+        return Single.create(CompletableFuture.allOf(laneFutures).thenApply(done -> Arrays.asList(decisions)), true);
+    }
+}
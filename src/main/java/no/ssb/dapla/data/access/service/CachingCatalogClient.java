@@ -0,0 +1,112 @@
+package no.ssb.dapla.data.access.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import io.helidon.common.reactive.Single;
+import io.helidon.config.Config;
+import io.helidon.metrics.RegistryFactory;
+import no.ssb.dapla.catalog.protobuf.GetDatasetRequest;
+import no.ssb.dapla.catalog.protobuf.GetDatasetResponse;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches catalog responses in front of another {@link CatalogClient}.
+ * <p>
+ * A dataset looked up at a snapshot timestamp more than {@code immutableAfter} millis in the past never changes, so
+ * such responses are kept until evicted by size. Lookups of the latest version (timestamp 0), of a timestamp so
+ * recent that a version could still be written at it, and lookups that found no dataset are only kept for
+ * {@code latestTtl} millis. Responses are cached per bearer token, like the lookups of the {@link CoalescingCatalogClient},
+ * since the token is passed on to the catalog and may decide what it answers.
+ */
+public class CachingCatalogClient implements CatalogClient {
+
+    private final CatalogClient delegate;
+    private final long latestTtl;
+    private final long immutableAfter;
+    private final Cache<List<Object>, GetDatasetResponse> versions;
+    private final Cache<List<Object>, GetDatasetResponse> latest;
+
+    private final Counter catalogWebClientCacheHitCount;
+    private final Counter catalogWebClientCacheMissCount;
+
+    /**
+     * Configured from the {@code max-size}, {@code latest-ttl} and {@code immutable-after} (seconds) keys of the given
+     * config node.
+     */
+    public CachingCatalogClient(CatalogClient delegate, Config config) {
+        this(delegate,
+                config.get("max-size").asLong().orElse(10_000L),
+                TimeUnit.SECONDS.toMillis(config.get("latest-ttl").asLong().orElse(5L)),
+                TimeUnit.SECONDS.toMillis(config.get("immutable-after").asLong().orElse(60L)));
+    }
+
+    /**
+     * @param maxSize        max number of cached responses of each kind
+     * @param latestTtl      millis to keep responses that may still change, 0 to not cache them
+     * @param immutableAfter millis after which no version can be written at a snapshot timestamp anymore
+     */
+    public CachingCatalogClient(CatalogClient delegate, long maxSize, long latestTtl, long immutableAfter) {
+        this.delegate = delegate;
+        this.latestTtl = latestTtl;
+        this.immutableAfter = immutableAfter;
+        RegistryFactory metricsRegistry = RegistryFactory.getInstance();
+        MetricRegistry appRegistry = metricsRegistry.getRegistry(MetricRegistry.Type.APPLICATION);
+        this.catalogWebClientCacheHitCount = appRegistry.counter("catalogWebClientCacheHitCount");
+        this.catalogWebClientCacheMissCount = appRegistry.counter("catalogWebClientCacheMissCount");
+        Counter catalogWebClientCacheEvictionCount = appRegistry.counter("catalogWebClientCacheEvictionCount");
+        RemovalListener<List<Object>, GetDatasetResponse> evictionCounter = (request, response, cause) -> {
+            if (cause.wasEvicted()) {
+                catalogWebClientCacheEvictionCount.inc();
+            }
+        };
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .removalListener(evictionCounter)
+                .build();
+        this.latest = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(latestTtl, TimeUnit.MILLISECONDS)
+                .removalListener(evictionCounter)
+                .build();
+    }
+
+    @Override
+    public Single<GetDatasetResponse> get(GetDatasetRequest request, String jwtToken) {
+        List<Object> key = Arrays.asList(request, jwtToken);
+        GetDatasetResponse cached = versions.getIfPresent(key);
+        if (cached == null) {
+            cached = latest.getIfPresent(key);
+        }
+        if (cached != null) {
+            catalogWebClientCacheHitCount.inc();
+            return Single.just(cached);
+        }
+        catalogWebClientCacheMissCount.inc();
+        long requestTime = System.currentTimeMillis();
+        return delegate.get(request, jwtToken).map(response -> {
+            if (isImmutable(request, response, requestTime)) {
+                versions.put(key, response);
+            } else if (latestTtl > 0) {
+                latest.put(key, response);
+            }
+            return response;
+        });
+    }
+
+    private boolean isImmutable(GetDatasetRequest request, GetDatasetResponse response, long requestTime) {
+        return request.getTimestamp() > 0
+                && request.getTimestamp() < requestTime - immutableAfter
+                && response.hasDataset();
+    }
+
+    public void invalidateAll() {
+        versions.invalidateAll();
+        latest.invalidateAll();
+    }
+}
@@ -0,0 +1,169 @@
+package no.ssb.dapla.data.access.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.helidon.common.reactive.Single;
+import io.helidon.config.Config;
+import io.helidon.metrics.RegistryFactory;
+import no.ssb.dapla.auth.dataset.protobuf.AccessCheckRequest;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Caches access decisions in front of another {@link UserAccessClient}.
+ * <p>
+ * Grants and denials are kept for separate, short periods. Decisions are cached per bearer token, the token is
+ * validated by the auth service and a cached decision must never be handed to a request with another token.
+ * All decisions of a user can be flushed, for instance after a change of the user's roles. A decision that was
+ * requested before a flush of its user and arrives after it is not cached, so a flush cannot be undone by checks
+ * that were in flight.
+ */
+public class CachingUserAccessClient implements UserAccessClient {
+
+    private final UserAccessClient delegate;
+    private final Cache<List<String>, Boolean> decisions;
+    /**
+     * Incremented by every flush, and the value of the latest flush of each recently flushed user.
+     */
+    private final AtomicLong flushSequence = new AtomicLong();
+    private final Cache<String, Long> flushedUsers = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(1, TimeUnit.HOURS)
+            .build();
+
+    private final Counter userAccessWebClientCacheHitCount;
+    private final Counter userAccessWebClientCacheMissCount;
+
+    /**
+     * Configured from the {@code max-size}, {@code grant-ttl} and {@code deny-ttl} (seconds) keys of the given config node.
+     */
+    public CachingUserAccessClient(UserAccessClient delegate, Config config) {
+        this(delegate,
+                config.get("max-size").asLong().orElse(100_000L),
+                TimeUnit.SECONDS.toMillis(config.get("grant-ttl").asLong().orElse(30L)),
+                TimeUnit.SECONDS.toMillis(config.get("deny-ttl").asLong().orElse(5L)));
+    }
+
+    /**
+     * @param grantTtl millis to keep a grant, 0 to not cache grants
+     * @param denyTtl  millis to keep a denial, 0 to not cache denials
+     */
+    public CachingUserAccessClient(UserAccessClient delegate, long maxSize, long grantTtl, long denyTtl) {
+        this.delegate = delegate;
+        RegistryFactory metricsRegistry = RegistryFactory.getInstance();
+        MetricRegistry appRegistry = metricsRegistry.getRegistry(MetricRegistry.Type.APPLICATION);
+        this.userAccessWebClientCacheHitCount = appRegistry.counter("userAccessWebClientCacheHitCount");
+        this.userAccessWebClientCacheMissCount = appRegistry.counter("userAccessWebClientCacheMissCount");
+        Counter userAccessWebClientCacheEvictionCount = appRegistry.counter("userAccessWebClientCacheEvictionCount");
+        this.decisions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<List<String>, Boolean>() {
+                    @Override
+                    public long expireAfterCreate(List<String> key, Boolean allowed, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(allowed ? grantTtl : denyTtl);
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(List<String> key, Boolean allowed, long currentTime, long currentDuration) {
+                        return expireAfterCreate(key, allowed, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(List<String> key, Boolean allowed, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .<List<String>, Boolean>removalListener((key, allowed, cause) -> {
+                    if (cause.wasEvicted()) {
+                        userAccessWebClientCacheEvictionCount.inc();
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public Single<Boolean> hasAccess(String userId, String privilege, String path, String valuation, String state, String jwtToken) {
+        List<String> key = Arrays.asList(userId, privilege, path, valuation, state, jwtToken);
+        Boolean allowed = decisions.getIfPresent(key);
+        if (allowed != null) {
+            userAccessWebClientCacheHitCount.inc();
+            return Single.just(allowed);
+        }
+        userAccessWebClientCacheMissCount.inc();
+        long requested = flushSequence.get();
+        return delegate.hasAccess(userId, privilege, path, valuation, state, jwtToken).map(decision -> {
+            cache(key, decision, requested);
+            return decision;
+        });
+    }
+
+    /**
+     * Answer the cached checks, and pass the rest on to the delegate as one bulk check.
+     */
+    @Override
+    public Single<List<Boolean>> hasAccess(List<AccessCheckRequest> checks, String jwtToken) {
+        Boolean[] results = new Boolean[checks.size()];
+        List<AccessCheckRequest> misses = new ArrayList<>();
+        List<Integer> missIndexes = new ArrayList<>();
+        for (int i = 0; i < checks.size(); i++) {
+            Boolean allowed = decisions.getIfPresent(key(checks.get(i), jwtToken));
+            if (allowed != null) {
+                userAccessWebClientCacheHitCount.inc();
+                results[i] = allowed;
+            } else {
+                userAccessWebClientCacheMissCount.inc();
+                misses.add(checks.get(i));
+                missIndexes.add(i);
+            }
+        }
+        if (misses.isEmpty()) {
+            return Single.just(Arrays.asList(results));
+        }
+        long requested = flushSequence.get();
+        return delegate.hasAccess(misses, jwtToken).map(missed -> {
+            for (int j = 0; j < missed.size(); j++) {
+                results[missIndexes.get(j)] = missed.get(j);
+                cache(key(misses.get(j), jwtToken), missed.get(j), requested);
+            }
+            return Arrays.asList(results);
+        });
+    }
+
+    /**
+     * Cache a decision that was requested at the given flush sequence, unless its user has been flushed since. The
+     * flush is checked after the put: either the flush sees the decision and invalidates it, or this sees the flush.
+     */
+    private void cache(List<String> key, Boolean decision, long requested) {
+        decisions.put(key, decision);
+        Long flushed = flushedUsers.getIfPresent(key.get(0));
+        if (flushed != null && flushed > requested) {
+            decisions.invalidate(key);
+        }
+    }
+
+    private static List<String> key(AccessCheckRequest check, String jwtToken) {
+        return Arrays.asList(check.getUserId(), check.getPrivilege(), check.getPath(), check.getValuation(), check.getState(), jwtToken);
+    }
+
+    /**
+     * Forget all cached decisions of the given user.
+     *
+     * @return the number of decisions that were flushed
+     */
+    public int flush(String userId) {
+        flushedUsers.put(userId, flushSequence.incrementAndGet());
+        List<List<String>> keys = decisions.asMap().keySet().stream()
+                .filter(key -> userId.equals(key.get(0)))
+                .collect(Collectors.toList());
+        decisions.invalidateAll(keys);
+        return keys.size();
+    }
+}
@@ -0,0 +1,27 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.common.reactive.Single;
+import no.ssb.dapla.catalog.protobuf.GetDatasetRequest;
+import no.ssb.dapla.catalog.protobuf.GetDatasetResponse;
+import no.ssb.dapla.data.access.concurrent.SingleCoalescer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shares one catalog call between concurrent identical requests of the same caller, see {@link SingleCoalescer}.
+ */
+public class CoalescingCatalogClient implements CatalogClient {
+
+    private final CatalogClient delegate;
+    private final SingleCoalescer<List<Object>, GetDatasetResponse> coalescer = new SingleCoalescer<>("catalogWebClientGet");
+
+    public CoalescingCatalogClient(CatalogClient delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Single<GetDatasetResponse> get(GetDatasetRequest request, String jwtToken) {
+        return coalescer.get(Arrays.asList(request, jwtToken), () -> delegate.get(request, jwtToken));
+    }
+}
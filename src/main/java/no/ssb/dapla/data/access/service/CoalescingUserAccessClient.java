@@ -0,0 +1,33 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.common.reactive.Single;
+import no.ssb.dapla.auth.dataset.protobuf.AccessCheckRequest;
+import no.ssb.dapla.data.access.concurrent.SingleCoalescer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Shares one access check between concurrent identical checks of the same caller, see {@link SingleCoalescer}.
+ * Bulk checks are passed on as they are.
+ */
+public class CoalescingUserAccessClient implements UserAccessClient {
+
+    private final UserAccessClient delegate;
+    private final SingleCoalescer<List<String>, Boolean> coalescer = new SingleCoalescer<>("userAccessWebClientGetAccess");
+
+    public CoalescingUserAccessClient(UserAccessClient delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Single<Boolean> hasAccess(String userId, String privilege, String path, String valuation, String state, String jwtToken) {
+        return coalescer.get(Arrays.asList(userId, privilege, path, valuation, state, jwtToken),
+                () -> delegate.hasAccess(userId, privilege, path, valuation, state, jwtToken));
+    }
+
+    @Override
+    public Single<List<Boolean>> hasAccess(List<AccessCheckRequest> checks, String jwtToken) {
+        return delegate.hasAccess(checks, jwtToken);
+    }
+}
@@ -3,8 +3,18 @@ package no.ssb.dapla.data.access.service;
 import com.auth0.jwt.JWT;
 import com.auth0.jwt.algorithms.Algorithm;
 import com.auth0.jwt.interfaces.DecodedJWT;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
+import com.google.protobuf.UnsafeByteOperations;
+import io.helidon.common.http.MediaType;
 import io.helidon.common.reactive.Single;
+import io.helidon.config.Config;
 import io.helidon.metrics.RegistryFactory;
 import io.helidon.webserver.Handler;
 import io.helidon.webserver.Routing;
@@ -19,6 +29,9 @@ import no.ssb.dapla.catalog.protobuf.Dataset;
 import no.ssb.dapla.catalog.protobuf.DatasetId;
 import no.ssb.dapla.catalog.protobuf.GetDatasetRequest;
 import no.ssb.dapla.catalog.protobuf.GetDatasetResponse;
+import no.ssb.dapla.data.access.metadata.BulkMetadataVerifier;
+import no.ssb.dapla.data.access.metadata.MerkleBatchSigner;
+import no.ssb.dapla.data.access.metadata.MetadataJson;
 import no.ssb.dapla.data.access.metadata.MetadataSigner;
 import no.ssb.dapla.data.access.protobuf.DeleteLocationRequest;
 import no.ssb.dapla.data.access.protobuf.DeleteLocationResponse;
@@ -28,6 +41,8 @@ import no.ssb.dapla.data.access.protobuf.WriteLocationRequest;
 import no.ssb.dapla.data.access.protobuf.WriteLocationResponse;
 import no.ssb.dapla.dataset.api.DatasetMeta;
 import no.ssb.dapla.dataset.api.DatasetMetaAll;
+import no.ssb.dapla.dataset.api.DatasetState;
+import no.ssb.dapla.dataset.api.Valuation;
 import no.ssb.helidon.application.Tracing;
 import no.ssb.helidon.media.protobuf.ProtobufJsonUtils;
 import org.eclipse.microprofile.metrics.Counter;
@@ -35,12 +50,25 @@ import org.eclipse.microprofile.metrics.MetricRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static java.util.Optional.ofNullable;
 import static no.ssb.helidon.application.Tracing.logError;
@@ -48,6 +76,24 @@ import static no.ssb.helidon.application.Tracing.logError;
 public class DataAccessHttpService implements Service {
 
     private static final Logger LOG = LoggerFactory.getLogger(DataAccessHttpService.class);
+
+    /**
+     * Id of the key that signed the metadata of a write location response, see {@link MetadataSigner#verify(String, byte[], byte[])}.
+     */
+    public static final String METADATA_SIGNATURE_KEY_ID_HEADER = "Metadata-Signature-Key-Id";
+
+    /**
+     * Present when the metadata signatures of a write location response are batch signatures, see {@link MerkleBatchSigner}.
+     */
+    public static final String METADATA_SIGNATURE_FORMAT_HEADER = "Metadata-Signature-Format";
+
+    static final int VERIFY_METADATA_MAX_ITEMS = 10_000;
+    /**
+     * Max verification tasks of one verifyMetadata request on the signing executor, leaving room for write signing.
+     */
+    static final int VERIFY_METADATA_MAX_CHUNKS_IN_FLIGHT = 2;
+    static final int LOCATIONS_MAX_ITEMS = 1000;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
     private static final String FALLBACK_TOKEN = JWT.create()
             .withClaim("preferred_username", "unknown")
             .sign(Algorithm.HMAC256("s3cr3t"));
@@ -57,6 +103,14 @@ public class DataAccessHttpService implements Service {
     private final CatalogClient catalogClient;
 
     private final MetadataSigner metadataSigner;
+    private final Executor signingExecutor;
+    private final MerkleBatchSigner batchSigner;
+    private final BulkMetadataVerifier bulkMetadataVerifier;
+    private final boolean speculativeWrite;
+    /**
+     * The last valuation and state that the catalog returned per path, or null unless reads are overlapped.
+     */
+    private final Cache<String, List<String>> lastKnownClassifications;
     private final Counter readRequestRequestCount;
     private final Counter readRequestAllowedCount;
     private final Counter readRequestDeniedCount;
@@ -66,13 +120,50 @@ public class DataAccessHttpService implements Service {
     private final Counter writeRequestAllowedCount;
     private final Counter writeRequestDeniedCount;
     private final Counter writeRequestFailedCount;
+    private final Counter verifyMetadataRequestCount;
+    private final Counter readLocationsRequestCount;
+    private final Counter writeLocationsRequestCount;
+    private final Counter writeSpeculationCount;
+    private final Counter writeSpeculationWastedCount;
+    private final Counter writeSpeculationWastedRouteCount;
+    private final Counter writeSpeculationWastedTokenCount;
+    private final Counter readSpeculationCount;
+    private final Counter readSpeculationHitCount;
+    private final Counter readSpeculationWastedCount;
+
+    public DataAccessHttpService(DataAccessService dataAccessService, UserAccessClient userAccessClient,
+                                 CatalogClient catalogClient, MetadataSigner metadataSigner, Executor signingExecutor) {
+        this(dataAccessService, userAccessClient, catalogClient, metadataSigner, signingExecutor, null);
+    }
+
+    /**
+     * @param batchSigner signs write metadata in batches, or null to sign every document on its own
+     */
+    public DataAccessHttpService(DataAccessService dataAccessService, UserAccessClient userAccessClient,
+                                 CatalogClient catalogClient, MetadataSigner metadataSigner, Executor signingExecutor,
+                                 MerkleBatchSigner batchSigner) {
+        this(dataAccessService, userAccessClient, catalogClient, metadataSigner, signingExecutor, batchSigner, Config.empty());
+    }
 
+    /**
+     * @param batchSigner    signs write metadata in batches, or null to sign every document on its own
+     * @param pipelineConfig execution modes of the rpc pipelines, {@code speculative-write} and {@code overlapped-read}
+     *                       (default false)
+     */
     public DataAccessHttpService(DataAccessService dataAccessService, UserAccessClient userAccessClient,
-                                 CatalogClient catalogClient, MetadataSigner metadataSigner) {
+                                 CatalogClient catalogClient, MetadataSigner metadataSigner, Executor signingExecutor,
+                                 MerkleBatchSigner batchSigner, Config pipelineConfig) {
         this.dataAccessService = dataAccessService;
         this.userAccessClient = userAccessClient;
         this.catalogClient = catalogClient;
         this.metadataSigner = metadataSigner;
+        this.signingExecutor = signingExecutor;
+        this.batchSigner = batchSigner;
+        this.bulkMetadataVerifier = new BulkMetadataVerifier(metadataSigner, signingExecutor, 64, VERIFY_METADATA_MAX_CHUNKS_IN_FLIGHT);
+        this.speculativeWrite = pipelineConfig.get("speculative-write").asBoolean().orElse(false);
+        this.lastKnownClassifications = pipelineConfig.get("overlapped-read").asBoolean().orElse(false)
+                ? Caffeine.newBuilder().maximumSize(pipelineConfig.get("overlapped-read-max-size").asLong().orElse(100_000L)).<String, List<String>>build()
+                : null;
         RegistryFactory metricsRegistry = RegistryFactory.getInstance();
         MetricRegistry appRegistry = metricsRegistry.getRegistry(MetricRegistry.Type.APPLICATION);
         this.readRequestRequestCount = appRegistry.counter("readRequestRequestCount");
@@ -84,6 +175,16 @@ public class DataAccessHttpService implements Service {
         this.writeRequestAllowedCount = appRegistry.counter("writeRequestAllowedCount");
         this.writeRequestDeniedCount = appRegistry.counter("writeRequestDeniedCount");
         this.writeRequestFailedCount = appRegistry.counter("writeRequestFailedCount");
+        this.verifyMetadataRequestCount = appRegistry.counter("verifyMetadataRequestCount");
+        this.readLocationsRequestCount = appRegistry.counter("readLocationsRequestCount");
+        this.writeLocationsRequestCount = appRegistry.counter("writeLocationsRequestCount");
+        this.writeSpeculationCount = appRegistry.counter("writeSpeculationCount");
+        this.writeSpeculationWastedCount = appRegistry.counter("writeSpeculationWastedCount");
+        this.writeSpeculationWastedRouteCount = appRegistry.counter("writeSpeculationWastedRouteCount");
+        this.writeSpeculationWastedTokenCount = appRegistry.counter("writeSpeculationWastedTokenCount");
+        this.readSpeculationCount = appRegistry.counter("readSpeculationCount");
+        this.readSpeculationHitCount = appRegistry.counter("readSpeculationHitCount");
+        this.readSpeculationWastedCount = appRegistry.counter("readSpeculationWastedCount");
     }
 
     static DecodedJWT extractJWT(ServerRequest req) {
@@ -105,6 +206,9 @@ public class DataAccessHttpService implements Service {
         rules.post("/rpc/DataAccessService/readLocation", Handler.create(ReadLocationRequest.class, this::readLocation));
         rules.post("/rpc/DataAccessService/writeLocation", Handler.create(WriteLocationRequest.class, this::writeLocation));
         rules.post("/rpc/DataAccessService/deleteLocation", Handler.create(DeleteLocationRequest.class, this::deleteLocation));
+        rules.post("/rpc/DataAccessService/readLocations", Handler.create(String.class, this::readLocations));
+        rules.post("/rpc/DataAccessService/writeLocations", Handler.create(String.class, this::writeLocations));
+        rules.post("/rpc/DataAccessService/verifyMetadata", Handler.create(String.class, this::verifyMetadata));
     }
 
     public void readLocation(ServerRequest req, ServerResponse res, ReadLocationRequest request) {
@@ -211,6 +315,8 @@ public class DataAccessHttpService implements Service {
                 .setTimestamp((version == null || version.length() == 0) ? 0 : Long.parseLong(version))
                 .build();
 
+        ReadSpeculation speculation = startReadSpeculation(userId, path, bearerToken);
+
         catalogClient.get(getDatasetRequest, bearerToken).subscribe(getDatasetResponse -> {
             if (ofNullable(getDatasetResponse)
                     .filter(GetDatasetResponse::hasDataset)
@@ -220,6 +326,7 @@ public class DataAccessHttpService implements Service {
                     .orElse("")
                     .isBlank()) {
                 // no record of dataset in catalog
+                discardReadSpeculation(speculation);
                 res.status(404).send();
                 readRequestNotFoundCount.inc();
                 return;
@@ -234,7 +341,7 @@ public class DataAccessHttpService implements Service {
                     .setPrivilege(Privilege.READ.name())
                     .build();
 
-            userAccessClient.hasAccess(accessCheckRequest, bearerToken).subscribe(
+            confirmReadSpeculation(speculation, accessCheckRequest, bearerToken).subscribe(
                     accessCheckResponse -> {
                         onUserAccessResponseConsumer.accept(getDatasetResponse, accessCheckResponse);
                     },
@@ -253,6 +360,7 @@ public class DataAccessHttpService implements Service {
             );
         }, throwable -> {
             try {
+                discardReadSpeculation(speculation);
                 Tracing.restoreTracingContext(req.tracer(), span);
                 logError(span, throwable, "error while performing catalog get");
                 LOG.error("readRequest: error while performing catalog get", throwable);
@@ -264,6 +372,70 @@ public class DataAccessHttpService implements Service {
         });
     }
 
+    /**
+     * Start the access check of an overlapped read with the last known valuation and state of the path, while the
+     * catalog is queried for the actual ones.
+     *
+     * @return the speculative access check, or null if reads are not overlapped or the path has not been read before
+     */
+    ReadSpeculation startReadSpeculation(String userId, String path, String bearerToken) {
+        if (lastKnownClassifications == null) {
+            return null;
+        }
+        List<String> classification = lastKnownClassifications.getIfPresent(path);
+        if (classification == null) {
+            return null;
+        }
+        readSpeculationCount.inc();
+        String valuation = classification.get(0);
+        String state = classification.get(1);
+        return new ReadSpeculation(valuation, state, userAccessClient.hasAccess(userId, Privilege.READ.name(), path,
+                valuation, state, bearerToken).toStage().toCompletableFuture());
+    }
+
+    /**
+     * Decide a read access check against the valuation and state from the catalog. A speculative decision is only
+     * used if it was made with exactly the same inputs, otherwise access is checked again.
+     */
+    Single<AccessCheckResponse> confirmReadSpeculation(ReadSpeculation speculation, AccessCheckRequest accessCheckRequest,
+                                                       String bearerToken) {
+        if (lastKnownClassifications != null) {
+            lastKnownClassifications.put(accessCheckRequest.getPath(),
+                    List.of(accessCheckRequest.getValuation(), accessCheckRequest.getState()));
+        }
+        if (speculation != null) {
+            if (speculation.valuation.equals(accessCheckRequest.getValuation()) && speculation.state.equals(accessCheckRequest.getState())) {
+                readSpeculationHitCount.inc();
+                return Single.create(speculation.decision
+                        .thenApply(allowed -> AccessCheckResponse.newBuilder().setAllowed(allowed).build())
+                        .exceptionallyCompose(throwable -> userAccessClient.hasAccess(accessCheckRequest, bearerToken).toStage()), true);
+            }
+            readSpeculationWastedCount.inc();
+        }
+        return userAccessClient.hasAccess(accessCheckRequest, bearerToken);
+    }
+
+    private void discardReadSpeculation(ReadSpeculation speculation) {
+        if (speculation != null) {
+            readSpeculationWastedCount.inc();
+        }
+    }
+
+    /**
+     * An access check started with the last known valuation and state of a path.
+     */
+    static class ReadSpeculation {
+        final String valuation;
+        final String state;
+        final CompletableFuture<Boolean> decision;
+
+        ReadSpeculation(String valuation, String state, CompletableFuture<Boolean> decision) {
+            this.valuation = valuation;
+            this.state = state;
+            this.decision = decision;
+        }
+    }
+
     /**
      * Handler for the deleteLocation http endpoint.
      * <p>
@@ -328,6 +500,34 @@ public class DataAccessHttpService implements Service {
 
             DatasetMeta untrustedMetadata = ProtobufJsonUtils.toPojo(request.getMetadataJson(), DatasetMeta.class);
 
+            if (speculativeWrite) {
+                speculativeWriteLocation(span, userId, JWT.getToken(), untrustedMetadata)
+                        .thenAccept(responsePojo -> {
+                            Tracing.restoreTracingContext(req.tracer(), span);
+                            if (responsePojo.getAccessAllowed()) {
+                                addSignatureHeaders(res);
+                                writeRequestAllowedCount.inc();
+                            } else {
+                                writeRequestDeniedCount.inc();
+                            }
+                            res.status(200).send(responsePojo);
+                            span.finish();
+                        })
+                        .exceptionally(throwable -> {
+                            try {
+                                Tracing.restoreTracingContext(req.tracer(), span);
+                                logError(span, throwable, "error in hasAccess(), getWriteLocation(), getWriteAccessToken() or sign()");
+                                LOG.error("hasAccess(), getWriteLocation(), getWriteAccessToken() or sign()", throwable);
+                                res.status(500).send(throwable);
+                                writeRequestFailedCount.inc();
+                                return null;
+                            } finally {
+                                span.finish();
+                            }
+                        });
+                return;
+            }
+
             writeRequest(req, res, untrustedMetadata, span, JWT.getToken(), userId, accessCheckResponse -> {
                 try {
                     Tracing.restoreTracingContext(req.tracer(), span);
@@ -339,75 +539,25 @@ public class DataAccessHttpService implements Service {
 
                         writeLocationFuture
                                 .orTimeout(10, TimeUnit.SECONDS)
-                                .thenAccept(location -> {
+                                .thenCompose(location -> {
                                     Tracing.restoreTracingContext(req.tracer(), span);
-                                    DatasetMeta allowedMetadata = DatasetMeta.newBuilder()
-                                            .mergeFrom(untrustedMetadata)
-                                            .setCreatedBy(userId)
-                                            .build();
-
-                                    ByteString validMetadataJson = ByteString.copyFromUtf8(ProtobufJsonUtils.toString(allowedMetadata));
-                                    ByteString signature = ByteString.copyFrom(metadataSigner.sign(validMetadataJson.toByteArray()));
-
-                                    DatasetMetaAll allowedMetadataAll = DatasetMetaAll.newBuilder()
-                                            .setId(allowedMetadata.getId())
-                                            .setType(allowedMetadata.getType())
-                                            .setValuation(allowedMetadata.getValuation())
-                                            .setState(allowedMetadata.getState())
-                                            .setPseudoConfig(allowedMetadata.getPseudoConfig())
-                                            .setCreatedBy(allowedMetadata.getCreatedBy())
-                                            .setRandom(UUID.randomUUID().toString()) // strengthen cryptographic signature
-                                            .setParentUri(location.toString())
-                                            .build();
-
-                                    ByteString allValidMetadataJson = ByteString.copyFromUtf8(ProtobufJsonUtils.toString(allowedMetadataAll));
-                                    ByteString allSignature = ByteString.copyFrom(metadataSigner.sign(allValidMetadataJson.toByteArray()));
-
                                     CompletableFuture<AccessToken> accessTokenFuture = dataAccessService.getWriteAccessToken(
-                                            span, userId, allowedMetadata.getId().getPath(), allowedMetadata.getValuation(), allowedMetadata.getState()
-                                    );
-
-                                    accessTokenFuture
-                                            .orTimeout(10, TimeUnit.SECONDS)
-                                            .thenAccept(token -> {
-                                                Tracing.restoreTracingContext(req.tracer(), span);
-                                                WriteLocationResponse.Builder responseBuilder = WriteLocationResponse.newBuilder()
-                                                        .setAccessAllowed(true)
-                                                        .setValidMetadataJson(validMetadataJson)
-                                                        .setMetadataSignature(signature)
-                                                        // parentUri contains the bucket from the routing table.
-                                                        .setParentUri(allowedMetadataAll.getParentUri())
-                                                        .setAllValidMetadataJson(allValidMetadataJson)
-                                                        .setAllMetadataSignature(allSignature);
-                                                if (token != null) {
-                                                    responseBuilder
-                                                            .setAccessToken(token.getAccessToken())
-                                                            .setExpirationTime(token.getExpirationTime());
-                                                }
-                                                WriteLocationResponse responsePojo = responseBuilder.build();
-                                                res.status(200).send(responsePojo);
-                                                writeRequestAllowedCount.inc();
-                                                span.finish();
-                                            })
-                                            .exceptionally(throwable -> {
-                                                try {
-                                                    Tracing.restoreTracingContext(req.tracer(), span);
-                                                    logError(span, throwable, "error in getWriteAccessToken()");
-                                                    LOG.error(String.format("getWriteAccessToken()"), throwable);
-                                                    res.status(500).send(throwable);
-                                                    writeRequestFailedCount.inc();
-                                                    return null;
-                                                } finally {
-                                                    span.finish();
-                                                }
-                                            });
-
+                                            span, userId, untrustedMetadata.getId().getPath(), untrustedMetadata.getValuation(), untrustedMetadata.getState()
+                                    ).orTimeout(10, TimeUnit.SECONDS);
+                                    return signWriteLocation(userId, untrustedMetadata, location, accessTokenFuture);
+                                })
+                                .thenAccept(responsePojo -> {
+                                    Tracing.restoreTracingContext(req.tracer(), span);
+                                    addSignatureHeaders(res);
+                                    res.status(200).send(responsePojo);
+                                    writeRequestAllowedCount.inc();
+                                    span.finish();
                                 })
                                 .exceptionally(throwable -> {
                                     try {
                                         Tracing.restoreTracingContext(req.tracer(), span);
-                                        logError(span, throwable, "error in getWriteLocation()");
-                                        LOG.error(String.format("getWriteLocation()"), throwable);
+                                        logError(span, throwable, "error in getWriteLocation(), getWriteAccessToken() or sign()");
+                                        LOG.error(String.format("getWriteLocation(), getWriteAccessToken() or sign()"), throwable);
                                         res.status(500).send(throwable);
                                         writeRequestFailedCount.inc();
                                         return null;
@@ -441,6 +591,565 @@ public class DataAccessHttpService implements Service {
         }
     }
 
+    /**
+     * Resolve the write location and mint the write access token while access is being checked, rather than after.
+     * Only the response depends on the access check, so the latency of an allowed write is the slowest of the three
+     * calls rather than their sum. Signing waits for the access check, so metadata is never signed for a user that is
+     * not allowed to write it. If access is denied or the check fails, the route and token are discarded and never
+     * returned, and the discarded work is counted.
+     *
+     * @return the response, with access not allowed if denied
+     */
+    CompletableFuture<WriteLocationResponse> speculativeWriteLocation(Span span, String userId, String bearerToken,
+                                                                      DatasetMeta untrustedMetadata) {
+        writeSpeculationCount.inc();
+        String path = untrustedMetadata.getId().getPath();
+        CompletableFuture<Boolean> accessFuture = userAccessClient.hasAccess(userId, Privilege.CREATE, untrustedMetadata, bearerToken)
+                .toStage()
+                .toCompletableFuture();
+        // a missing route may throw right away, it must only surface once access is allowed
+        CompletableFuture<URI> locationFuture = speculate(() -> dataAccessService.getWriteLocation(
+                span, userId, path, untrustedMetadata.getValuation(), untrustedMetadata.getState()
+        ));
+        CompletableFuture<AccessToken> accessTokenFuture = speculate(() -> dataAccessService.getWriteAccessToken(
+                span, userId, path, untrustedMetadata.getValuation(), untrustedMetadata.getState()
+        ));
+        return accessFuture
+                .whenComplete((allowed, throwable) -> {
+                    if (throwable != null || !allowed) {
+                        discardSpeculation(locationFuture, accessTokenFuture);
+                    }
+                })
+                .thenCompose(allowed -> {
+                    if (!allowed) {
+                        return CompletableFuture.completedFuture(WriteLocationResponse.newBuilder()
+                                .setAccessAllowed(false)
+                                .build());
+                    }
+                    return locationFuture.thenCompose(location -> signWriteLocation(userId, untrustedMetadata, location, accessTokenFuture));
+                });
+    }
+
+    /**
+     * Start a speculative call, turning a synchronous throw into a failed future.
+     */
+    private static <T> CompletableFuture<T> speculate(Supplier<CompletableFuture<T>> call) {
+        try {
+            return call.get().orTimeout(10, TimeUnit.SECONDS);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void discardSpeculation(CompletableFuture<URI> locationFuture, CompletableFuture<AccessToken> accessTokenFuture) {
+        writeSpeculationWastedCount.inc();
+        locationFuture.whenComplete((location, throwable) -> {
+            if (location != null) {
+                writeSpeculationWastedRouteCount.inc();
+            }
+        });
+        accessTokenFuture.whenComplete((token, throwable) -> {
+            if (token != null) {
+                writeSpeculationWastedTokenCount.inc();
+            }
+        });
+    }
+
+    /**
+     * Resolve the read locations of many datasets in one call. There is no protobuf message for this rpc, the request
+     * is JSON with {@link ReadLocationRequest} items:
+     * <pre>
+     * {"items": [{"path": "/path/to/dataset", "snapshot": 0}]}
+     * </pre>
+     * and the response holds the {@link ReadLocationResponse} fields and a {@code status} of ALLOWED, DENIED,
+     * NOT_FOUND or FAILED for every item, in the same order: {@code {"results": [{"status": "ALLOWED", ...}]}}
+     * <p>
+     * Items are resolved concurrently. Identical items share their catalog lookup, access to all found datasets is
+     * checked in one bulk call to the auth service, and items in the same bucket share their access token.
+     */
+    public void readLocations(ServerRequest req, ServerResponse res, String body) {
+        readLocationsRequestCount.inc();
+        Span span = Tracing.spanFromHttp(req, "readLocations");
+        try {
+            DecodedJWT JWT = extractJWT(req);
+            String userId = extractUserId(JWT);
+
+            List<ReadLocationRequest> items;
+            try {
+                items = parseItems(body, ReadLocationRequest.class);
+            } catch (IOException | RuntimeException e) {
+                res.status(400).send(e.getMessage());
+                span.finish();
+                return;
+            }
+
+            readRequestRequestCount.inc(items.size());
+            resolveReadLocations(span, userId, JWT.getToken(), items)
+                    .thenAccept(results -> {
+                        Tracing.restoreTracingContext(req.tracer(), span);
+                        ObjectNode response = MAPPER.createObjectNode();
+                        response.putArray("results").addAll(results);
+                        res.headers().contentType(MediaType.APPLICATION_JSON);
+                        res.status(200).send(response.toString());
+                        span.finish();
+                    })
+                    .exceptionally(throwable -> {
+                        try {
+                            Tracing.restoreTracingContext(req.tracer(), span);
+                            logError(span, throwable, "error in readLocations()");
+                            LOG.error("readLocations()", throwable);
+                            res.status(500).send(throwable);
+                            readRequestFailedCount.inc(items.size());
+                            return null;
+                        } finally {
+                            span.finish();
+                        }
+                    });
+        } catch (RuntimeException | Error e) {
+            try {
+                logError(span, e, "top-level error");
+                LOG.error("top-level error", e);
+                throw e;
+            } finally {
+                span.finish();
+            }
+        }
+    }
+
+    /**
+     * Check access to all items of a batch with one bulk check.
+     *
+     * @return the decisions, in the same order, failed rather than thrown if the check cannot be started
+     */
+    CompletableFuture<List<Boolean>> bulkHasAccess(List<AccessCheckRequest> checks, String bearerToken) {
+        if (checks.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        try {
+            return userAccessClient.hasAccess(checks, bearerToken).toStage().toCompletableFuture();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Resolve the items of a readLocations batch: look up the datasets, check access to all of them with one bulk
+     * check and fetch the access tokens.
+     *
+     * @return the results of the items, in the same order, never completes exceptionally
+     */
+    CompletableFuture<List<ObjectNode>> resolveReadLocations(Span span, String userId, String bearerToken, List<ReadLocationRequest> items) {
+        Map<GetDatasetRequest, CompletableFuture<GetDatasetResponse>> datasets = new HashMap<>();
+        List<CompletableFuture<GetDatasetResponse>> lookups = new ArrayList<>(items.size());
+        for (ReadLocationRequest item : items) {
+            GetDatasetRequest getDatasetRequest = GetDatasetRequest.newBuilder()
+                    .setPath(item.getPath())
+                    .setTimestamp(item.getSnapshot())
+                    .build();
+            lookups.add(datasets.computeIfAbsent(getDatasetRequest, request ->
+                    catalogClient.get(request, bearerToken).toStage().toCompletableFuture()));
+        }
+        return CompletableFuture.allOf(lookups.toArray(CompletableFuture[]::new))
+                .handle((done, throwable) -> null) // failed lookups fail their own items only
+                .thenCompose(done -> {
+                    Map<AccessCheckRequest, Integer> checkIndexes = new LinkedHashMap<>();
+                    int[] itemChecks = new int[items.size()];
+                    for (int i = 0; i < items.size(); i++) {
+                        GetDatasetResponse getDatasetResponse = lookups.get(i).isCompletedExceptionally() ? null : lookups.get(i).join();
+                        if (getDatasetResponse == null || !isFound(getDatasetResponse)) {
+                            itemChecks[i] = -1;
+                            continue;
+                        }
+                        Dataset dataset = getDatasetResponse.getDataset();
+                        AccessCheckRequest check = AccessCheckRequest.newBuilder()
+                                .setUserId(userId)
+                                .setPrivilege(Privilege.READ.name())
+                                .setPath(items.get(i).getPath())
+                                .setValuation(dataset.getValuation().name())
+                                .setState(dataset.getState().name())
+                                .build();
+                        itemChecks[i] = checkIndexes.computeIfAbsent(check, c -> checkIndexes.size());
+                    }
+                    CompletableFuture<List<Boolean>> decisions = bulkHasAccess(new ArrayList<>(checkIndexes.keySet()), bearerToken);
+                    Map<String, CompletableFuture<AccessToken>> tokens = new ConcurrentHashMap<>();
+                    List<CompletableFuture<ObjectNode>> results = new ArrayList<>(items.size());
+                    for (int i = 0; i < items.size(); i++) {
+                        results.add(resolveReadLocation(span, userId, items.get(i), lookups.get(i), decisions, itemChecks[i], tokens));
+                    }
+                    return CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+                            .thenApply(resolved -> results.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+                });
+    }
+
+    private static boolean isFound(GetDatasetResponse getDatasetResponse) {
+        return getDatasetResponse.hasDataset() && !getDatasetResponse.getDataset().getId().getPath().isBlank();
+    }
+
+    /**
+     * @param check the index of the item's access check in the decisions
+     * @return the result of one item of a readLocations batch, never completes exceptionally
+     */
+    CompletableFuture<ObjectNode> resolveReadLocation(Span span, String userId, ReadLocationRequest item,
+                                                      CompletableFuture<GetDatasetResponse> lookup,
+                                                      CompletableFuture<List<Boolean>> decisions, int check,
+                                                      Map<String, CompletableFuture<AccessToken>> tokens) {
+        ObjectNode result = MAPPER.createObjectNode().put("path", item.getPath());
+        return lookup
+                .thenCompose(getDatasetResponse -> {
+                    if (!isFound(getDatasetResponse)) {
+                        readRequestNotFoundCount.inc();
+                        return CompletableFuture.completedFuture(result.put("status", "NOT_FOUND"));
+                    }
+                    Dataset dataset = getDatasetResponse.getDataset();
+                    result.put("parentUri", dataset.getParentUri())
+                            .put("version", String.valueOf(dataset.getId().getTimestamp()));
+                    return decisions.thenCompose(allowedList -> {
+                        boolean allowed = allowedList.get(check);
+                        result.put("accessAllowed", allowed);
+                        if (!allowed) {
+                            readRequestDeniedCount.inc();
+                            return CompletableFuture.completedFuture(result.put("status", "DENIED"));
+                        }
+                        return tokens.computeIfAbsent(dataset.getParentUri(), parentUri ->
+                                dataAccessService.getReadAccessToken(span, userId, parentUri).orTimeout(10, TimeUnit.SECONDS))
+                                .thenApply(token -> {
+                                    if (token != null) {
+                                        result.put("accessToken", token.getAccessToken())
+                                                .put("expirationTime", token.getExpirationTime());
+                                    }
+                                    readRequestAllowedCount.inc();
+                                    return result.put("status", "ALLOWED");
+                                });
+                    });
+                })
+                .exceptionally(throwable -> {
+                    logError(span, throwable, "error while resolving read location of " + item.getPath());
+                    LOG.error("readLocations: error while resolving read location of {}", item.getPath(), throwable);
+                    readRequestFailedCount.inc();
+                    return MAPPER.createObjectNode()
+                            .put("path", item.getPath())
+                            .put("status", "FAILED");
+                });
+    }
+
+    /**
+     * Request write locations for many datasets in one call. There is no protobuf message for this rpc, the request
+     * is JSON with {@link WriteLocationRequest} items:
+     * <pre>
+     * {"items": [{"metadataJson": "{...}"}]}
+     * </pre>
+     * and the response holds the {@link WriteLocationResponse} fields and a {@code status} of ALLOWED, DENIED or FAILED
+     * for every item, in the same order: {@code {"results": [{"status": "ALLOWED", ...}]}}
+     * <p>
+     * Access to all items is checked in one bulk call to the auth service, items that are routed to the same location
+     * share one access token, and all metadata is signed on the signing executor.
+     */
+    public void writeLocations(ServerRequest req, ServerResponse res, String body) {
+        writeLocationsRequestCount.inc();
+        Span span = Tracing.spanFromHttp(req, "writeLocations");
+        try {
+            DecodedJWT JWT = extractJWT(req);
+            String userId = extractUserId(JWT);
+
+            List<DatasetMeta> items = new ArrayList<>();
+            try {
+                for (WriteLocationRequest item : parseItems(body, WriteLocationRequest.class)) {
+                    items.add(ProtobufJsonUtils.toPojo(item.getMetadataJson(), DatasetMeta.class));
+                }
+            } catch (IOException | RuntimeException e) {
+                res.status(400).send(e.getMessage());
+                span.finish();
+                return;
+            }
+
+            writeRequestRequestCount.inc(items.size());
+            resolveWriteLocations(span, userId, JWT.getToken(), items)
+                    .thenAccept(results -> {
+                        Tracing.restoreTracingContext(req.tracer(), span);
+                        ObjectNode response = MAPPER.createObjectNode();
+                        response.putArray("results").addAll(results);
+                        addSignatureHeaders(res);
+                        res.headers().contentType(MediaType.APPLICATION_JSON);
+                        res.status(200).send(response.toString());
+                        span.finish();
+                    })
+                    .exceptionally(throwable -> {
+                        try {
+                            Tracing.restoreTracingContext(req.tracer(), span);
+                            logError(span, throwable, "error in writeLocations()");
+                            LOG.error("writeLocations()", throwable);
+                            res.status(500).send(throwable);
+                            writeRequestFailedCount.inc(items.size());
+                            return null;
+                        } finally {
+                            span.finish();
+                        }
+                    });
+        } catch (RuntimeException | Error e) {
+            try {
+                logError(span, e, "top-level error");
+                LOG.error("top-level error", e);
+                throw e;
+            } finally {
+                span.finish();
+            }
+        }
+    }
+
+    /**
+     * Resolve the items of a writeLocations batch, checking access to all of them with one bulk check.
+     *
+     * @return the results of the items, in the same order, never completes exceptionally
+     */
+    CompletableFuture<List<ObjectNode>> resolveWriteLocations(Span span, String userId, String bearerToken, List<DatasetMeta> items) {
+        List<AccessCheckRequest> checks = new ArrayList<>(items.size());
+        for (DatasetMeta item : items) {
+            checks.add(AccessCheckRequest.newBuilder()
+                    .setUserId(userId)
+                    .setPrivilege(Privilege.CREATE.name())
+                    .setPath(item.getId().getPath())
+                    .setValuation(item.getValuation().name())
+                    .setState(item.getState().name())
+                    .build());
+        }
+        CompletableFuture<List<Boolean>> decisions = bulkHasAccess(checks, bearerToken);
+        Map<Object, CompletableFuture<AccessToken>> tokens = new ConcurrentHashMap<>();
+        List<CompletableFuture<ObjectNode>> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            results.add(resolveWriteLocation(span, userId, items.get(i), decisions, i, tokens));
+        }
+        return CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+                .thenApply(resolved -> results.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    /**
+     * @param check  the index of the item's access check in the decisions
+     * @param tokens the write tokens of the batch, by {@link DataAccessService#getWriteCredentialsKey}
+     * @return the result of one item of a writeLocations batch, never completes exceptionally
+     */
+    CompletableFuture<ObjectNode> resolveWriteLocation(Span span, String userId, DatasetMeta untrustedMetadata,
+                                                       CompletableFuture<List<Boolean>> decisions, int check,
+                                                       Map<Object, CompletableFuture<AccessToken>> tokens) {
+        String path = untrustedMetadata.getId().getPath();
+        return decisions
+                .thenCompose(allowedList -> {
+                    if (!allowedList.get(check)) {
+                        writeRequestDeniedCount.inc();
+                        return CompletableFuture.completedFuture(MAPPER.createObjectNode()
+                                .put("path", path)
+                                .put("status", "DENIED")
+                                .put("accessAllowed", false));
+                    }
+                    return dataAccessService.getWriteLocation(span, userId, path, untrustedMetadata.getValuation(), untrustedMetadata.getState())
+                            .orTimeout(10, TimeUnit.SECONDS)
+                            .thenCompose(location -> signWriteLocation(userId, untrustedMetadata, location,
+                                    writeAccessToken(span, userId, untrustedMetadata, tokens)))
+                            .thenApply(response -> {
+                                writeRequestAllowedCount.inc();
+                                return toJsonNode(response)
+                                        .put("path", path)
+                                        .put("status", "ALLOWED");
+                            });
+                })
+                .toCompletableFuture()
+                .exceptionally(throwable -> {
+                    logError(span, throwable, "error while resolving write location of " + path);
+                    LOG.error("writeLocations: error while resolving write location of {}", path, throwable);
+                    writeRequestFailedCount.inc();
+                    return MAPPER.createObjectNode()
+                            .put("path", path)
+                            .put("status", "FAILED");
+                });
+    }
+
+    /**
+     * Fetch the write token of an item, sharing it with the other items of the batch whose datasets are written with
+     * the same credentials.
+     */
+    CompletableFuture<AccessToken> writeAccessToken(Span span, String userId, DatasetMeta untrustedMetadata,
+                                                    Map<Object, CompletableFuture<AccessToken>> tokens) {
+        String path = untrustedMetadata.getId().getPath();
+        Valuation valuation = untrustedMetadata.getValuation();
+        DatasetState state = untrustedMetadata.getState();
+        Object credentialsKey = dataAccessService.getWriteCredentialsKey(path, valuation, state);
+        if (credentialsKey == null) {
+            return dataAccessService.getWriteAccessToken(span, userId, path, valuation, state)
+                    .orTimeout(10, TimeUnit.SECONDS);
+        }
+        return tokens.computeIfAbsent(credentialsKey, key ->
+                dataAccessService.getWriteAccessToken(span, userId, path, valuation, state)
+                        .orTimeout(10, TimeUnit.SECONDS));
+    }
+
+    private static ObjectNode toJsonNode(Message message) {
+        try {
+            return (ObjectNode) MAPPER.readTree(ProtobufJsonUtils.toString(message));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parse the protobuf JSON items of a batch request.
+     */
+    static <T extends Message> List<T> parseItems(String body, Class<T> itemClass) throws IOException {
+        JsonNode itemNodes = MAPPER.readTree(body).path("items");
+        if (!itemNodes.isArray()) {
+            throw new IllegalArgumentException("Missing items");
+        }
+        if (itemNodes.size() > LOCATIONS_MAX_ITEMS) {
+            throw new IllegalArgumentException("Too many items, max is " + LOCATIONS_MAX_ITEMS);
+        }
+        List<T> items = new ArrayList<>(itemNodes.size());
+        for (JsonNode itemNode : itemNodes) {
+            items.add(ProtobufJsonUtils.toPojo(itemNode.toString(), itemClass));
+        }
+        return items;
+    }
+
+    /**
+     * Verify a batch of signed metadata documents. There is no protobuf message for this rpc, the request is JSON:
+     * <pre>
+     * {"items": [{"metadataJson": base64, "signature": base64, "keyId": optional, "format": optional}]}
+     * </pre>
+     * and the response holds the result of every item in the same order: {@code {"results": [{"valid": true}]}}
+     */
+    public void verifyMetadata(ServerRequest req, ServerResponse res, String body) {
+        verifyMetadataRequestCount.inc();
+        Span span = Tracing.spanFromHttp(req, "verifyMetadata");
+        try {
+            List<BulkMetadataVerifier.Item> items;
+            try {
+                items = parseVerifyMetadataRequest(body);
+            } catch (IOException | IllegalArgumentException e) {
+                res.status(400).send(e.getMessage());
+                span.finish();
+                return;
+            }
+            bulkMetadataVerifier.verify(items)
+                    .orTimeout(30, TimeUnit.SECONDS)
+                    .thenAccept(results -> {
+                        Tracing.restoreTracingContext(req.tracer(), span);
+                        ObjectNode response = MAPPER.createObjectNode();
+                        ArrayNode resultNodes = response.putArray("results");
+                        for (boolean valid : results) {
+                            resultNodes.addObject().put("valid", valid);
+                        }
+                        res.headers().contentType(MediaType.APPLICATION_JSON);
+                        res.status(200).send(response.toString());
+                        span.finish();
+                    })
+                    .exceptionally(throwable -> {
+                        try {
+                            Tracing.restoreTracingContext(req.tracer(), span);
+                            logError(span, throwable, "error in verifyMetadata()");
+                            LOG.error("verifyMetadata()", throwable);
+                            res.status(500).send(throwable);
+                            return null;
+                        } finally {
+                            span.finish();
+                        }
+                    });
+        } catch (RuntimeException | Error e) {
+            try {
+                logError(span, e, "top-level error");
+                LOG.error("top-level error", e);
+                throw e;
+            } finally {
+                span.finish();
+            }
+        }
+    }
+
+    static List<BulkMetadataVerifier.Item> parseVerifyMetadataRequest(String body) throws IOException {
+        JsonNode itemNodes = MAPPER.readTree(body).path("items");
+        if (!itemNodes.isArray()) {
+            throw new IllegalArgumentException("Missing items");
+        }
+        if (itemNodes.size() > VERIFY_METADATA_MAX_ITEMS) {
+            throw new IllegalArgumentException("Too many items, max is " + VERIFY_METADATA_MAX_ITEMS);
+        }
+        List<BulkMetadataVerifier.Item> items = new ArrayList<>(itemNodes.size());
+        for (JsonNode itemNode : itemNodes) {
+            items.add(new BulkMetadataVerifier.Item(
+                    Base64.getDecoder().decode(itemNode.path("metadataJson").asText()),
+                    Base64.getDecoder().decode(itemNode.path("signature").asText()),
+                    itemNode.hasNonNull("keyId") ? itemNode.get("keyId").asText() : null,
+                    itemNode.hasNonNull("format") ? itemNode.get("format").asText() : null));
+        }
+        return items;
+    }
+
+    /**
+     * Sign the metadata of an allowed write and assemble the response once the signatures and the access token are
+     * ready. Both signatures are computed in parallel on the signing executor.
+     */
+    CompletableFuture<WriteLocationResponse> signWriteLocation(String userId, DatasetMeta untrustedMetadata, URI location,
+                                                               CompletableFuture<AccessToken> accessTokenFuture) {
+        DatasetMeta allowedMetadata = DatasetMeta.newBuilder()
+                .mergeFrom(untrustedMetadata)
+                .setCreatedBy(userId)
+                .build();
+
+        ByteString validMetadataJson = MetadataJson.toJson(allowedMetadata);
+        CompletableFuture<ByteString> signatureFuture = sign(validMetadataJson);
+
+        DatasetMetaAll allowedMetadataAll = DatasetMetaAll.newBuilder()
+                .setId(allowedMetadata.getId())
+                .setType(allowedMetadata.getType())
+                .setValuation(allowedMetadata.getValuation())
+                .setState(allowedMetadata.getState())
+                .setPseudoConfig(allowedMetadata.getPseudoConfig())
+                .setCreatedBy(allowedMetadata.getCreatedBy())
+                .setRandom(UUID.randomUUID().toString()) // strengthen cryptographic signature
+                .setParentUri(location.toString())
+                .build();
+
+        ByteString allValidMetadataJson = MetadataJson.toJson(allowedMetadataAll);
+        CompletableFuture<ByteString> allSignatureFuture = sign(allValidMetadataJson);
+
+        return CompletableFuture.allOf(signatureFuture, allSignatureFuture, accessTokenFuture)
+                .thenApply(signed -> {
+                    AccessToken token = accessTokenFuture.join();
+                    WriteLocationResponse.Builder responseBuilder = WriteLocationResponse.newBuilder()
+                            .setAccessAllowed(true)
+                            .setValidMetadataJson(validMetadataJson)
+                            .setMetadataSignature(signatureFuture.join())
+                            // parentUri contains the bucket from the routing table.
+                            .setParentUri(allowedMetadataAll.getParentUri())
+                            .setAllValidMetadataJson(allValidMetadataJson)
+                            .setAllMetadataSignature(allSignatureFuture.join());
+                    if (token != null) {
+                        responseBuilder
+                                .setAccessToken(token.getAccessToken())
+                                .setExpirationTime(token.getExpirationTime());
+                    }
+                    return responseBuilder.build();
+                });
+    }
+
+    private void addSignatureHeaders(ServerResponse res) {
+        res.headers().add(METADATA_SIGNATURE_KEY_ID_HEADER, metadataSigner.getActiveKeyId());
+        if (batchSigner != null) {
+            res.headers().add(METADATA_SIGNATURE_FORMAT_HEADER, MerkleBatchSigner.FORMAT);
+        }
+    }
+
+    /**
+     * Sign on the signing executor, keeping the cpu heavy signature computation off the webserver threads.
+     */
+    CompletableFuture<ByteString> sign(ByteString metadataJson) {
+        if (batchSigner != null) {
+            return batchSigner.sign(metadataJson.toByteArray()).thenApply(UnsafeByteOperations::unsafeWrap);
+        }
+        try {
+            // signatures are freshly allocated and never modified, so they can be wrapped rather than copied
+            return CompletableFuture.supplyAsync(() -> UnsafeByteOperations.unsafeWrap(metadataSigner.sign(metadataJson)), signingExecutor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     <R> void writeRequest(ServerRequest req, ServerResponse res, DatasetMeta datasetMeta, Span span, String bearerToken, String userId, Consumer<AccessCheckResponse> consumer) {
 
         AccessCheckRequest accessCheckRequest = AccessCheckRequest.newBuilder()
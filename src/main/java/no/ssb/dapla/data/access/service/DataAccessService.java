@@ -26,4 +26,20 @@ public interface DataAccessService {
     }
 
     CompletableFuture<URI> getWriteLocation(Span span, String userId, String path, Valuation valuation, DatasetState state);
+
+    /**
+     * Identify the credentials that write access tokens for the given dataset are minted from. Datasets with equal
+     * keys get interchangeable write tokens.
+     *
+     * @return the key, or null if write tokens must not be shared between datasets
+     */
+    default Object getWriteCredentialsKey(String path, Valuation valuation, DatasetState state) {
+        return null;
+    }
+
+    /**
+     * Release threads and watches held by the service, called when the application shuts down.
+     */
+    default void close() {
+    }
 }
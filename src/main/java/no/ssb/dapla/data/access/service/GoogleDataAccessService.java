@@ -1,11 +1,13 @@
 package no.ssb.dapla.data.access.service;
 
 import io.helidon.config.Config;
-import io.helidon.config.ConfigValue;
 import io.helidon.metrics.RegistryFactory;
 import io.opentracing.Span;
+import no.ssb.dapla.data.access.concurrent.BoundedExecutors;
+import no.ssb.dapla.data.access.oauth.GoogleAccessTokenCache;
 import no.ssb.dapla.data.access.oauth.GoogleCredentialsDetails;
 import no.ssb.dapla.data.access.oauth.GoogleCredentialsFactory;
+import no.ssb.dapla.data.access.oauth.GoogleCredentialsRegistry;
 import no.ssb.dapla.dataset.api.DatasetState;
 import no.ssb.dapla.dataset.api.Valuation;
 import org.eclipse.microprofile.metrics.Counter;
@@ -14,9 +16,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Optional.ofNullable;
+import static java.util.stream.Collectors.toSet;
 
 public class GoogleDataAccessService extends AbstractDataAccessService {
 
@@ -27,14 +33,70 @@ public class GoogleDataAccessService extends AbstractDataAccessService {
     private final Counter gcsReadScopedAccessTokenCount;
     private final Counter gcsWriteScopedAccessTokenCount;
     private final int tokenLifetime;
+    private final ExecutorService blockingExecutor;
+    private final GoogleCredentialsRegistry credentialsRegistry;
+    private final GoogleAccessTokenCache tokenCache;
 
-    public GoogleDataAccessService(Config config, ConfigValue<Integer> tokenLifetime) {
-        super(config);
+    public GoogleDataAccessService(Config config, Config applicationConfig) {
+        super(config, applicationConfig.get("routing.cache.max-size").asLong().orElse(DEFAULT_ROUTE_CACHE_SIZE));
         RegistryFactory metricsRegistry = RegistryFactory.getInstance();
         MetricRegistry appRegistry = metricsRegistry.getRegistry(MetricRegistry.Type.APPLICATION);
         this.gcsReadScopedAccessTokenCount = appRegistry.counter("gcsReadScopedAccessTokenCount");
         this.gcsWriteScopedAccessTokenCount = appRegistry.counter("gcsWriteScopedAccessTokenCount");
-        this.tokenLifetime = tokenLifetime.orElse(0);
+        Config tokenConfig = applicationConfig.get("token");
+        this.tokenLifetime = tokenConfig.get("lifetime").asInt().orElse(0);
+        // token minting and key file loading block on I/O and must never run on the webserver threads
+        this.blockingExecutor = BoundedExecutors.create("dataAccessBlockingExecutor",
+                applicationConfig.get("data-access.blocking-executor"), 16, 1000);
+        long refreshAhead = TimeUnit.SECONDS.toMillis(tokenConfig.get("cache.refresh-ahead").asInt().orElse(600));
+        checkTokenLifetime(tokenLifetime, refreshAhead);
+        this.tokenCache = new GoogleAccessTokenCache(this::mintToken, blockingExecutor,
+                TimeUnit.SECONDS.toMillis(tokenConfig.get("cache.min-remaining").asInt().orElse(300)),
+                refreshAhead);
+        this.credentialsRegistry = new GoogleCredentialsRegistry(tokenCache::invalidate,
+                TimeUnit.SECONDS.toMillis(applicationConfig.get("credentials.poll-interval").asInt().orElse(60)));
+        preloadCredentials(getRoutingTable());
+    }
+
+    /**
+     * Tokens that do not outlive the refresh-ahead time would be refreshed as soon as they are minted, and dropped
+     * because nobody has used them yet, so every request would mint a token.
+     *
+     * @param tokenLifetime seconds, 0 for the default lifetime of the credentials
+     * @throws IllegalStateException if a configured lifetime is not longer than refreshAhead
+     */
+    static void checkTokenLifetime(int tokenLifetime, long refreshAhead) {
+        if (tokenLifetime > 0 && TimeUnit.SECONDS.toMillis(tokenLifetime) <= refreshAhead) {
+            String message = "token.lifetime (" + tokenLifetime + " s) must be longer than token.cache.refresh-ahead ("
+                    + TimeUnit.MILLISECONDS.toSeconds(refreshAhead) + " s) or access tokens are never served from the cache";
+            LOG.error(message);
+            throw new IllegalStateException(message);
+        }
+    }
+
+    @Override
+    public void close() {
+        credentialsRegistry.close();
+        tokenCache.close();
+        blockingExecutor.shutdown();
+    }
+
+    @Override
+    protected void onRoutingTableChanged(RoutingTable routingTable) {
+        // key files of new routes are parsed before the first request needs them
+        blockingExecutor.execute(() -> preloadCredentials(routingTable));
+    }
+
+    private void preloadCredentials(RoutingTable routingTable) {
+        credentialsRegistry.preload(routingTable.getRoutes().stream()
+                .flatMap(route -> route.getAuth().values().stream())
+                .filter(Objects::nonNull)
+                .collect(toSet()));
+    }
+
+    private GoogleCredentialsDetails mintToken(String jsonPath, int lifetime, String scope) {
+        return GoogleCredentialsFactory.createCredentialsDetails(true,
+                jsonPath == null ? null : credentialsRegistry.get(jsonPath), lifetime, scope);
     }
 
     @Override
@@ -45,15 +107,16 @@ public class GoogleDataAccessService extends AbstractDataAccessService {
             LOG.info(String.format("User %s is asking to read from %s", userId, parentUriString));
             final URI parentUri = URI.create(parentUriString);
             if ("gs".equals(parentUri.getScheme())) {
-                GoogleCredentialsDetails credential = GoogleCredentialsFactory.createCredentialsDetails(true,
-                        getRoute(parentUri.getScheme(), ofNullable(parentUri.getAuthority()).orElse("")).getAuth().get("read"), tokenLifetime, READ_SCOPE);
-                AccessToken accessToken = new AccessToken(
-                        credential.getAccessToken(),
-                        credential.getExpirationTime(),
-                        parentUriString
-                );
-                future.complete(accessToken);
-                gcsReadScopedAccessTokenCount.inc();
+                return tokenCache.get(
+                        getRoute(parentUri.getScheme(), ofNullable(parentUri.getAuthority()).orElse("")).getAuth().get("read"), tokenLifetime, READ_SCOPE)
+                        .thenApply(credential -> {
+                            gcsReadScopedAccessTokenCount.inc();
+                            return new AccessToken(
+                                    credential.getAccessToken(),
+                                    credential.getExpirationTime(),
+                                    parentUriString
+                            );
+                        });
             } else {
                 // No GCS scheme
                 future.complete(null);
@@ -72,15 +135,15 @@ public class GoogleDataAccessService extends AbstractDataAccessService {
             Route route = getRoute(path, valuation, state);
             LOG.info("Got route: " + route.getUri());
             if ("gs".equals(route.getUri().getScheme())) {
-                GoogleCredentialsDetails credential = GoogleCredentialsFactory.createCredentialsDetails(true,
-                        route.getAuth().get("write"), tokenLifetime, WRITE_SCOPE);
-                AccessToken accessToken = new AccessToken(
-                        credential.getAccessToken(),
-                        credential.getExpirationTime(),
-                        route.getUri().toString()
-                );
-                future.complete(accessToken);
-                gcsWriteScopedAccessTokenCount.inc();
+                return tokenCache.get(route.getAuth().get("write"), tokenLifetime, WRITE_SCOPE)
+                        .thenApply(credential -> {
+                            gcsWriteScopedAccessTokenCount.inc();
+                            return new AccessToken(
+                                    credential.getAccessToken(),
+                                    credential.getExpirationTime(),
+                                    route.getUri().toString()
+                            );
+                        });
             } else {
                 // No GCS scheme
                 future.complete(null);
@@ -0,0 +1,175 @@
+package no.ssb.dapla.data.access.service;
+
+import no.ssb.dapla.data.access.service.RoutingTable.RoutingRule;
+import no.ssb.dapla.dataset.api.DatasetState;
+import no.ssb.dapla.dataset.api.Valuation;
+
+import java.util.Arrays;
+
+/**
+ * Character trie over the include and exclude path prefixes of all routing rules.
+ * <p>
+ * Every trie node where a prefix ends lists the indices of the rules that include or exclude that prefix. Walking the
+ * trie along a path visits exactly the prefixes of that path, which marks the rules with a matching include prefix
+ * and the rules with a matching exclude prefix in two bit sets. Rules without include prefixes are always candidates.
+ * The valuation and state criteria of all rules are precomputed as bit masks per (valuation, state) pair, so the
+ * first match is the lowest set bit of {@code (included | unrestricted) & ~excluded & accepted}, which preserves the
+ * first-match order of the routing configuration.
+ */
+class PathPrefixTrie {
+
+    private static final int[] NO_RULES = new int[0];
+    private static final int STATES = DatasetState.values().length + 1;
+
+    private final Node root = new Node();
+    private final int words;
+    /**
+     * Rules that have no path include criterion and accept any path that is not excluded.
+     */
+    private final long[] unrestricted;
+    /**
+     * Rules accepting each (valuation, state) pair, indexed by {@link #maskIndex(Valuation, DatasetState)}.
+     */
+    private final long[][] accepted;
+    private final ThreadLocal<Scratch> scratch;
+
+    PathPrefixTrie(RoutingRule[] rules) {
+        this.words = Math.max(1, (rules.length + 63) >>> 6);
+        this.unrestricted = new long[words];
+        Valuation[] valuations = Valuation.values();
+        DatasetState[] states = DatasetState.values();
+        this.accepted = new long[(valuations.length + 1) * STATES][words];
+        for (int i = 0; i < rules.length; i++) {
+            RoutingRule rule = rules[i];
+            if (rule.pathIncludes == null) {
+                set(unrestricted, i);
+            } else {
+                for (String prefix : rule.pathIncludes) {
+                    Node node = node(prefix);
+                    node.includes = append(node.includes, i);
+                }
+            }
+            for (String prefix : rule.pathExcludes) {
+                Node node = node(prefix);
+                node.excludes = append(node.excludes, i);
+            }
+            for (int v = -1; v < valuations.length; v++) {
+                for (int s = -1; s < states.length; s++) {
+                    Valuation valuation = v < 0 ? null : valuations[v];
+                    DatasetState state = s < 0 ? null : states[s];
+                    if (rule.accepts(valuation, state)) {
+                        set(accepted[maskIndex(valuation, state)], i);
+                    }
+                }
+            }
+        }
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(words));
+    }
+
+    /**
+     * @return the index of the first rule matching the given path, valuation and state, or -1 if none matches
+     */
+    int firstMatch(String path, Valuation valuation, DatasetState state) {
+        Scratch scratch = this.scratch.get();
+        long[] candidates = scratch.candidates;
+        long[] excluded = scratch.excluded;
+        System.arraycopy(unrestricted, 0, candidates, 0, words);
+        Arrays.fill(excluded, 0L);
+
+        Node node = root;
+        mark(node, candidates, excluded);
+        for (int i = 0, length = path.length(); i < length; i++) {
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                break;
+            }
+            mark(node, candidates, excluded);
+        }
+
+        long[] mask = accepted[maskIndex(valuation, state)];
+        for (int w = 0; w < words; w++) {
+            long bits = candidates[w] & ~excluded[w] & mask[w];
+            if (bits != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return -1;
+    }
+
+    static void mark(Node node, long[] candidates, long[] excluded) {
+        for (int rule : node.includes) {
+            set(candidates, rule);
+        }
+        for (int rule : node.excludes) {
+            set(excluded, rule);
+        }
+    }
+
+    private Node node(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.getOrAddChild(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    private static int maskIndex(Valuation valuation, DatasetState state) {
+        int v = valuation == null ? 0 : valuation.ordinal() + 1;
+        int s = state == null ? 0 : state.ordinal() + 1;
+        return v * STATES + s;
+    }
+
+    static void set(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    static int[] append(int[] rules, int rule) {
+        if (rules.length > 0 && rules[rules.length - 1] == rule) {
+            return rules; // the same prefix listed twice in one rule
+        }
+        int[] appended = Arrays.copyOf(rules, rules.length + 1);
+        appended[rules.length] = rule;
+        return appended;
+    }
+
+    static class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        int[] includes = NO_RULES;
+        int[] excludes = NO_RULES;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i < 0 ? null : children[i];
+        }
+
+        Node getOrAddChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int insertAt = -i - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            newKeys[insertAt] = c;
+            newChildren[insertAt] = new Node();
+            System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[insertAt];
+        }
+    }
+
+    static class Scratch {
+        final long[] candidates;
+        final long[] excluded;
+
+        Scratch(int words) {
+            this.candidates = new long[words];
+            this.excluded = new long[words];
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package no.ssb.dapla.data.access.service;
+
+import no.ssb.dapla.auth.dataset.protobuf.Privilege;
+import no.ssb.dapla.dataset.api.DatasetState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled form of a {@link PolicySnapshot} that answers access checks in-process.
+ * <p>
+ * The include and exclude path prefixes of all roles are held in one character trie, built the same way as the
+ * {@link PathPrefixTrie} of the routing table. Walking the trie along a path marks the roles that include and the
+ * roles that exclude the path in two bit sets. The privilege, valuation and state criteria of the roles are
+ * precomputed as bit masks per (privilege, valuation, state), and every user has a bit set of the roles granted
+ * directly or through groups. A check is allowed if {@code (included | unrestricted) & ~excluded & accepted & granted}
+ * has any bit set.
+ */
+class PolicyIndex {
+
+    /**
+     * Valuations from the least to the most sensitive.
+     */
+    static final List<String> VALUATIONS = List.of("OPEN", "INTERNAL", "SHIELDED", "SENSITIVE");
+
+    private final long version;
+    private final int words;
+    private final PathPrefixTrie.Node root = new PathPrefixTrie.Node();
+    private final long[] unrestricted;
+    private final Map<String, Integer> privileges = new HashMap<>();
+    private final Map<String, Integer> valuations = new HashMap<>();
+    private final Map<String, Integer> states = new HashMap<>();
+    /**
+     * Roles accepting each (privilege, valuation, state), indexed by {@link #maskIndex(int, int, int)}.
+     */
+    private final long[][] accepted;
+    private final Map<String, long[]> granted = new HashMap<>();
+    private final ThreadLocal<PathPrefixTrie.Scratch> scratch;
+
+    PolicyIndex(PolicySnapshot snapshot) {
+        this.version = snapshot.version;
+        List<PolicySnapshot.Role> roles = new ArrayList<>(snapshot.roles.values());
+        this.words = Math.max(1, (roles.size() + 63) >>> 6);
+        this.unrestricted = new long[words];
+        for (Privilege privilege : Privilege.values()) {
+            if (!"UNRECOGNIZED".equals(privilege.name())) {
+                privileges.put(privilege.name(), privileges.size());
+            }
+        }
+        VALUATIONS.forEach(valuation -> valuations.put(valuation, valuations.size()));
+        for (DatasetState state : DatasetState.values()) {
+            if (!"UNRECOGNIZED".equals(state.name())) {
+                states.put(state.name(), states.size());
+            }
+        }
+        this.accepted = new long[privileges.size() * valuations.size() * states.size()][words];
+
+        Map<String, Integer> roleIndexes = new HashMap<>();
+        for (int i = 0; i < roles.size(); i++) {
+            PolicySnapshot.Role role = roles.get(i);
+            roleIndexes.put(role.roleId, i);
+            if (role.pathIncludes.isEmpty()) {
+                PathPrefixTrie.set(unrestricted, i);
+            }
+            for (String prefix : role.pathIncludes) {
+                PathPrefixTrie.Node node = node(prefix);
+                node.includes = PathPrefixTrie.append(node.includes, i);
+            }
+            for (String prefix : role.pathExcludes) {
+                PathPrefixTrie.Node node = node(prefix);
+                node.excludes = PathPrefixTrie.append(node.excludes, i);
+            }
+            for (Map.Entry<String, Integer> privilege : privileges.entrySet()) {
+                for (Map.Entry<String, Integer> valuation : valuations.entrySet()) {
+                    for (Map.Entry<String, Integer> state : states.entrySet()) {
+                        if (role.accepts(privilege.getKey(), valuation.getKey(), state.getKey())) {
+                            PathPrefixTrie.set(accepted[maskIndex(privilege.getValue(), valuation.getValue(), state.getValue())], i);
+                        }
+                    }
+                }
+            }
+        }
+        snapshot.users.forEach((userId, user) -> {
+            long[] userRoles = new long[words];
+            for (String roleId : user.roleIds(snapshot.groups)) {
+                Integer role = roleIndexes.get(roleId);
+                if (role != null) {
+                    PathPrefixTrie.set(userRoles, role);
+                }
+            }
+            granted.put(userId, userRoles);
+        });
+        this.scratch = ThreadLocal.withInitial(() -> new PathPrefixTrie.Scratch(words));
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return whether access is allowed, or null if the user, privilege, valuation or state is unknown to the index
+     */
+    Boolean hasAccess(String userId, String privilege, String path, String valuation, String state) {
+        Integer p = privileges.get(privilege);
+        Integer v = valuations.get(valuation);
+        Integer s = states.get(state);
+        if (p == null || v == null || s == null) {
+            return null;
+        }
+        long[] userRoles = granted.get(userId);
+        if (userRoles == null) {
+            return null; // the snapshot may predate the user, let the auth service decide
+        }
+        PathPrefixTrie.Scratch scratch = this.scratch.get();
+        long[] candidates = scratch.candidates;
+        long[] excluded = scratch.excluded;
+        System.arraycopy(unrestricted, 0, candidates, 0, words);
+        Arrays.fill(excluded, 0L);
+
+        PathPrefixTrie.Node node = root;
+        PathPrefixTrie.mark(node, candidates, excluded);
+        for (int i = 0, length = path.length(); i < length; i++) {
+            node = node.child(path.charAt(i));
+            if (node == null) {
+                break;
+            }
+            PathPrefixTrie.mark(node, candidates, excluded);
+        }
+
+        long[] mask = accepted[maskIndex(p, v, s)];
+        for (int w = 0; w < words; w++) {
+            if ((candidates[w] & ~excluded[w] & mask[w] & userRoles[w]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private PathPrefixTrie.Node node(String prefix) {
+        PathPrefixTrie.Node node = root;
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.getOrAddChild(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    private int maskIndex(int privilege, int valuation, int state) {
+        return (privilege * valuations.size() + valuation) * states.size() + state;
+    }
+}
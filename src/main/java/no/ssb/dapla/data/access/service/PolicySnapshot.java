@@ -0,0 +1,180 @@
+package no.ssb.dapla.data.access.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replicated copy of the role, group and user policies of the auth service, see {@link PolicySnapshotUserAccessClient}.
+ * <p>
+ * A snapshot is JSON:
+ * <pre>
+ * {"version": 42,
+ *  "roles": [{"roleId": "reader", "privileges": {"includes": ["READ"]}, "paths": {"includes": ["/a/"], "excludes": ["/a/b/"]},
+ *             "maxValuation": "INTERNAL", "states": {"excludes": ["RAW"]}}],
+ *  "groups": [{"groupId": "team", "roles": ["reader"]}],
+ *  "users": [{"userId": "user", "roles": [], "groups": ["team"]}]}
+ * </pre>
+ * Missing or empty includes accept anything that is not excluded, and a role without maxValuation accepts any valuation.
+ * A delta has the same layout with the added or changed entries only, the version it applies to in {@code fromVersion},
+ * and the ids of removed entries in {@code "deleted": {"roles": [], "groups": [], "users": []}}.
+ */
+class PolicySnapshot {
+
+    final long version;
+    final Map<String, Role> roles;
+    /**
+     * Role ids per group id.
+     */
+    final Map<String, List<String>> groups;
+    final Map<String, User> users;
+
+    PolicySnapshot(long version, Map<String, Role> roles, Map<String, List<String>> groups, Map<String, User> users) {
+        this.version = version;
+        this.roles = Collections.unmodifiableMap(roles);
+        this.groups = Collections.unmodifiableMap(groups);
+        this.users = Collections.unmodifiableMap(users);
+    }
+
+    static boolean isDelta(JsonNode node) {
+        return node.has("fromVersion");
+    }
+
+    /**
+     * @throws IllegalArgumentException if the snapshot is invalid
+     */
+    static PolicySnapshot parse(JsonNode snapshot) {
+        if (!snapshot.path("version").canConvertToLong()) {
+            throw new IllegalArgumentException("Policy snapshot has no version");
+        }
+        Map<String, Role> roles = new LinkedHashMap<>();
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        Map<String, User> users = new LinkedHashMap<>();
+        putAll(snapshot, roles, groups, users);
+        return new PolicySnapshot(snapshot.get("version").asLong(), roles, groups, users);
+    }
+
+    /**
+     * @return a new snapshot with the delta applied
+     * @throws IllegalArgumentException if the delta is invalid or does not apply to the version of this snapshot
+     */
+    PolicySnapshot apply(JsonNode delta) {
+        long fromVersion = delta.path("fromVersion").asLong(-1);
+        if (fromVersion != version || !delta.path("version").canConvertToLong()) {
+            throw new IllegalArgumentException("Policy delta from version " + fromVersion + " does not apply to version " + version);
+        }
+        Map<String, Role> roles = new LinkedHashMap<>(this.roles);
+        Map<String, List<String>> groups = new LinkedHashMap<>(this.groups);
+        Map<String, User> users = new LinkedHashMap<>(this.users);
+        JsonNode deleted = delta.path("deleted");
+        deleted.path("roles").forEach(roleId -> roles.remove(roleId.asText()));
+        deleted.path("groups").forEach(groupId -> groups.remove(groupId.asText()));
+        deleted.path("users").forEach(userId -> users.remove(userId.asText()));
+        putAll(delta, roles, groups, users);
+        return new PolicySnapshot(delta.get("version").asLong(), roles, groups, users);
+    }
+
+    private static void putAll(JsonNode node, Map<String, Role> roles, Map<String, List<String>> groups, Map<String, User> users) {
+        for (JsonNode role : node.path("roles")) {
+            String maxValuation = role.hasNonNull("maxValuation") ? role.get("maxValuation").asText() : null;
+            if (maxValuation != null && !PolicyIndex.VALUATIONS.contains(maxValuation)) {
+                throw new IllegalArgumentException("Unknown valuation " + maxValuation + " of role " + role.path("roleId").asText());
+            }
+            String roleId = requireId(role, "roleId");
+            roles.put(roleId, new Role(roleId,
+                    Set.copyOf(strings(role.path("privileges").path("includes"))),
+                    Set.copyOf(strings(role.path("privileges").path("excludes"))),
+                    strings(role.path("paths").path("includes")),
+                    strings(role.path("paths").path("excludes")),
+                    maxValuation,
+                    Set.copyOf(strings(role.path("states").path("includes"))),
+                    Set.copyOf(strings(role.path("states").path("excludes")))));
+        }
+        for (JsonNode group : node.path("groups")) {
+            groups.put(requireId(group, "groupId"), strings(group.path("roles")));
+        }
+        for (JsonNode user : node.path("users")) {
+            users.put(requireId(user, "userId"), new User(strings(user.path("roles")), strings(user.path("groups"))));
+        }
+    }
+
+    private static String requireId(JsonNode entry, String field) {
+        String id = entry.path(field).asText("");
+        if (id.isEmpty()) {
+            throw new IllegalArgumentException("Policy entry without " + field + ": " + entry);
+        }
+        return id;
+    }
+
+    private static List<String> strings(JsonNode array) {
+        List<String> strings = new ArrayList<>(array.size());
+        array.forEach(element -> strings.add(element.asText()));
+        return Collections.unmodifiableList(strings);
+    }
+
+    static class Role {
+        final String roleId;
+        final Set<String> privilegeIncludes;
+        final Set<String> privilegeExcludes;
+        final List<String> pathIncludes;
+        final List<String> pathExcludes;
+        /**
+         * The most sensitive valuation accepted, or null if any valuation is accepted.
+         */
+        final String maxValuation;
+        final Set<String> stateIncludes;
+        final Set<String> stateExcludes;
+
+        Role(String roleId, Set<String> privilegeIncludes, Set<String> privilegeExcludes, List<String> pathIncludes,
+             List<String> pathExcludes, String maxValuation, Set<String> stateIncludes, Set<String> stateExcludes) {
+            this.roleId = roleId;
+            this.privilegeIncludes = privilegeIncludes;
+            this.privilegeExcludes = privilegeExcludes;
+            this.pathIncludes = pathIncludes;
+            this.pathExcludes = pathExcludes;
+            this.maxValuation = maxValuation;
+            this.stateIncludes = stateIncludes;
+            this.stateExcludes = stateExcludes;
+        }
+
+        /**
+         * Whether the privilege, valuation and state criteria accept the given values, paths are not considered.
+         */
+        boolean accepts(String privilege, String valuation, String state) {
+            return accepts(privilegeIncludes, privilegeExcludes, privilege)
+                    && (maxValuation == null || PolicyIndex.VALUATIONS.indexOf(valuation) <= PolicyIndex.VALUATIONS.indexOf(maxValuation))
+                    && accepts(stateIncludes, stateExcludes, state);
+        }
+
+        private static boolean accepts(Set<String> includes, Set<String> excludes, String value) {
+            return (includes.isEmpty() || includes.contains(value)) && !excludes.contains(value);
+        }
+    }
+
+    static class User {
+        final List<String> roles;
+        final List<String> groups;
+
+        User(List<String> roles, List<String> groups) {
+            this.roles = roles;
+            this.groups = groups;
+        }
+
+        /**
+         * @return the ids of the roles granted to the user directly or through groups
+         */
+        Set<String> roleIds(Map<String, List<String>> groupRoles) {
+            Set<String> roleIds = new LinkedHashSet<>(roles);
+            for (String group : groups) {
+                roleIds.addAll(groupRoles.getOrDefault(group, List.of()));
+            }
+            return roleIds;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package no.ssb.dapla.data.access.service;
+
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.helidon.common.reactive.Single;
+import io.helidon.config.Config;
+import io.helidon.metrics.RegistryFactory;
+import io.helidon.webclient.WebClient;
+import io.helidon.webclient.WebClientResponse;
+import no.ssb.dapla.auth.dataset.protobuf.AccessCheckRequest;
+import no.ssb.dapla.data.access.watch.FileWatcher;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evaluates access checks in-process against a replicated snapshot of the auth service policies, see {@link PolicySnapshot}
+ * and {@link PolicyIndex}.
+ * <p>
+ * Snapshots are pulled from the auth service every {@code pull-interval} seconds, as a delta from the current version
+ * ({@code GET /policy/delta?since=version}) when the auth service has one, and as a full snapshot
+ * ({@code GET /policy/snapshot}) otherwise. Snapshots and deltas can also be pushed by writing them to the watched
+ * {@code file}. Checks go to the remote client instead while there is no snapshot, once the last update is more than
+ * {@code max-staleness} seconds old, and for privileges, valuations or states the snapshot does not know. A share of
+ * {@code sample-rate} of the local decisions is compared with the decision of the remote client, and a mismatch
+ * triggers a pull. The sampled checks go to the uncached consistency client, so that they compare the snapshot with
+ * the auth service and not with a cached decision.
+ * <p>
+ * The auth service validates the bearer token of every check. Local evaluation verifies the signature, issuer and
+ * expiry of the token with the {@link TokenVerifier}, and only decides checks for the user the token was issued to,
+ * everything else goes to the remote client.
+ */
+public class PolicySnapshotUserAccessClient implements UserAccessClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PolicySnapshotUserAccessClient.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long FILE_POLL_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    private final UserAccessClient remote;
+    private final UserAccessClient consistencyClient;
+    private final TokenVerifier tokenVerifier;
+    private final WebClient policyClient;
+    private final long maxStaleness;
+    private final double sampleRate;
+    private final ScheduledExecutorService puller;
+    private final FileWatcher fileWatcher;
+    private final AtomicBoolean pullPending = new AtomicBoolean();
+
+    private volatile PolicySnapshot snapshot;
+    private volatile PolicyIndex index;
+    private final AtomicLong lastUpdateTimestamp = new AtomicLong();
+
+    private final Counter policySnapshotLocalDecisionCount;
+    private final Counter policySnapshotRemoteDecisionCount;
+    private final Counter policySnapshotUnverifiedTokenCount;
+    private final Counter policySnapshotUpdateCount;
+    private final Counter policySnapshotUpdateErrorCount;
+    private final Counter policySnapshotConsistencyCheckCount;
+    private final Counter policySnapshotConsistencyMismatchCount;
+
+    /**
+     * Configured from the {@code pull-interval}, {@code file}, {@code max-staleness} and {@code sample-rate} keys of
+     * the given config node, pulling from the auth service at the given host and port.
+     */
+    public PolicySnapshotUserAccessClient(UserAccessClient remote, UserAccessClient consistencyClient,
+                                          TokenVerifier tokenVerifier, String host, int port, Config config) {
+        this(remote,
+                consistencyClient,
+                tokenVerifier,
+                WebClient.builder().baseUri(toURI(host, port)).build(),
+                TimeUnit.SECONDS.toMillis(config.get("pull-interval").asLong().orElse(10L)),
+                config.get("file").asString().map(Path::of).orElse(null),
+                TimeUnit.SECONDS.toMillis(config.get("max-staleness").asLong().orElse(300L)),
+                config.get("sample-rate").asDouble().orElse(0.01));
+    }
+
+    /**
+     * @param remote            answers the checks that cannot be evaluated locally
+     * @param consistencyClient answers the sampled consistency checks, should not cache decisions
+     * @param tokenVerifier     verifies the tokens of the checks that are evaluated locally
+     * @param policyClient  client of the auth service to pull snapshots from, or null to only use pushed snapshots
+     * @param pullInterval  millis between pulls, 0 or less to only use pushed snapshots
+     * @param snapshotFile  file to watch for pushed snapshots and deltas, or null
+     * @param maxStaleness  millis after the last update that checks go to the remote client instead
+     * @param sampleRate    share of the local decisions that are compared with the remote client
+     */
+    PolicySnapshotUserAccessClient(UserAccessClient remote, UserAccessClient consistencyClient, TokenVerifier tokenVerifier,
+                                   WebClient policyClient, long pullInterval, Path snapshotFile,
+                                   long maxStaleness, double sampleRate) {
+        if (tokenVerifier == null) {
+            throw new IllegalStateException("Local policy evaluation requires a token verifier");
+        }
+        this.remote = remote;
+        this.consistencyClient = consistencyClient;
+        this.tokenVerifier = tokenVerifier;
+        this.policyClient = pullInterval > 0 ? policyClient : null;
+        this.maxStaleness = maxStaleness;
+        this.sampleRate = sampleRate;
+        RegistryFactory metricsRegistry = RegistryFactory.getInstance();
+        MetricRegistry appRegistry = metricsRegistry.getRegistry(MetricRegistry.Type.APPLICATION);
+        this.policySnapshotLocalDecisionCount = appRegistry.counter("policySnapshotLocalDecisionCount");
+        this.policySnapshotRemoteDecisionCount = appRegistry.counter("policySnapshotRemoteDecisionCount");
+        this.policySnapshotUnverifiedTokenCount = appRegistry.counter("policySnapshotUnverifiedTokenCount");
+        this.policySnapshotUpdateCount = appRegistry.counter("policySnapshotUpdateCount");
+        this.policySnapshotUpdateErrorCount = appRegistry.counter("policySnapshotUpdateErrorCount");
+        this.policySnapshotConsistencyCheckCount = appRegistry.counter("policySnapshotConsistencyCheckCount");
+        this.policySnapshotConsistencyMismatchCount = appRegistry.counter("policySnapshotConsistencyMismatchCount");
+        appRegistry.remove("policySnapshotVersion");
+        appRegistry.register("policySnapshotVersion", (Gauge<Long>) () -> index == null ? -1L : index.getVersion());
+        appRegistry.remove("policySnapshotLastUpdateTimestamp");
+        appRegistry.register("policySnapshotLastUpdateTimestamp", (Gauge<Long>) lastUpdateTimestamp::get);
+
+        this.puller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "policy-snapshot-puller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (snapshotFile != null) {
+            this.fileWatcher = new FileWatcher("policy-snapshot", FILE_POLL_INTERVAL, this::pushFile);
+            fileWatcher.watch(snapshotFile);
+            if (Files.exists(snapshotFile)) {
+                pushFile(snapshotFile);
+            }
+        } else {
+            this.fileWatcher = null;
+        }
+        if (this.policyClient != null) {
+            puller.scheduleWithFixedDelay(this::pull, 0, pullInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static URI toURI(String host, int port) {
+        try {
+            return new URI("http", null, host, port, null, null, null);
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return the client that answers the checks that cannot be evaluated locally
+     */
+    public UserAccessClient getRemote() {
+        return remote;
+    }
+
+    @Override
+    public Single<Boolean> hasAccess(String userId, String privilege, String path, String valuation, String state, String jwtToken) {
+        Boolean allowed = evaluate(verifiedUserId(jwtToken), userId, privilege, path, valuation, state, jwtToken);
+        if (allowed == null) {
+            policySnapshotRemoteDecisionCount.inc();
+            return remote.hasAccess(userId, privilege, path, valuation, state, jwtToken);
+        }
+        return Single.just(allowed);
+    }
+
+    /**
+     * Evaluate the checks locally, and pass the checks that cannot be evaluated on to the remote client as one bulk check.
+     */
+    @Override
+    public Single<List<Boolean>> hasAccess(List<AccessCheckRequest> checks, String jwtToken) {
+        Boolean[] results = new Boolean[checks.size()];
+        List<AccessCheckRequest> undecided = new ArrayList<>();
+        List<Integer> undecidedIndexes = new ArrayList<>();
+        String verifiedUserId = verifiedUserId(jwtToken);
+        for (int i = 0; i < checks.size(); i++) {
+            AccessCheckRequest check = checks.get(i);
+            results[i] = evaluate(verifiedUserId, check.getUserId(), check.getPrivilege(), check.getPath(), check.getValuation(), check.getState(), jwtToken);
+            if (results[i] == null) {
+                undecided.add(check);
+                undecidedIndexes.add(i);
+            }
+        }
+        if (undecided.isEmpty()) {
+            return Single.just(Arrays.asList(results));
+        }
+        policySnapshotRemoteDecisionCount.inc(undecided.size());
+        return remote.hasAccess(undecided, jwtToken).map(decided -> {
+            for (int j = 0; j < decided.size(); j++) {
+                results[undecidedIndexes.get(j)] = decided.get(j);
+            }
+            return Arrays.asList(results);
+        });
+    }
+
+    /**
+     * @return the user the token was issued to, or null if the token cannot be verified
+     */
+    private String verifiedUserId(String jwtToken) {
+        if (index == null) {
+            return null;
+        }
+        try {
+            return DataAccessHttpService.extractUserId(tokenVerifier.verify(jwtToken));
+        } catch (JWTVerificationException e) {
+            LOG.debug("Token not verified, passing checks on to the auth service: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return the local decision, or null if the check cannot be evaluated locally
+     */
+    private Boolean evaluate(String verifiedUserId, String userId, String privilege, String path, String valuation,
+                             String state, String jwtToken) {
+        PolicyIndex index = this.index;
+        if (index == null || System.currentTimeMillis() - lastUpdateTimestamp.get() > maxStaleness) {
+            return null;
+        }
+        if (verifiedUserId == null || !verifiedUserId.equals(userId)) {
+            policySnapshotUnverifiedTokenCount.inc();
+            return null;
+        }
+        Boolean allowed = index.hasAccess(userId, privilege, path, valuation, state);
+        if (allowed == null) {
+            return null;
+        }
+        policySnapshotLocalDecisionCount.inc();
+        if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            checkConsistency(allowed, index.getVersion(), userId, privilege, path, valuation, state, jwtToken);
+        }
+        return allowed;
+    }
+
+    private void checkConsistency(boolean allowed, long version, String userId, String privilege, String path,
+                                  String valuation, String state, String jwtToken) {
+        consistencyClient.hasAccess(userId, privilege, path, valuation, state, jwtToken).toStage().whenComplete((remoteAllowed, throwable) -> {
+            if (throwable != null) {
+                return; // the auth service may well be down, that is what the snapshot is for
+            }
+            policySnapshotConsistencyCheckCount.inc();
+            if (remoteAllowed != allowed) {
+                policySnapshotConsistencyMismatchCount.inc();
+                LOG.warn("Policy snapshot version {} decided {} for {} {} {} {} {}, the auth service decided {}",
+                        version, allowed, userId, privilege, path, valuation, state, remoteAllowed);
+                requestPull();
+            }
+        });
+    }
+
+    private void requestPull() {
+        if (policyClient != null && pullPending.compareAndSet(false, true)) {
+            puller.execute(this::pull);
+        }
+    }
+
+    /**
+     * Apply a pushed snapshot or delta.
+     *
+     * @throws IllegalArgumentException if it is invalid, or is a delta that does not apply to the current snapshot
+     */
+    public synchronized void push(String json) {
+        JsonNode node;
+        try {
+            node = MAPPER.readTree(json);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Policy snapshot is not valid JSON", e);
+        }
+        PolicySnapshot next;
+        if (PolicySnapshot.isDelta(node)) {
+            if (snapshot == null) {
+                throw new IllegalArgumentException("Policy delta without a snapshot to apply it to");
+            }
+            next = snapshot.apply(node);
+        } else {
+            next = PolicySnapshot.parse(node);
+        }
+        PolicyIndex nextIndex = new PolicyIndex(next);
+        long previousVersion = snapshot == null ? -1 : snapshot.version;
+        snapshot = next;
+        index = nextIndex;
+        lastUpdateTimestamp.set(System.currentTimeMillis());
+        policySnapshotUpdateCount.inc();
+        if (next.version != previousVersion) {
+            LOG.info("Policy snapshot updated from version {} to {} with {} users and {} roles",
+                    previousVersion, next.version, next.users.size(), next.roles.size());
+        }
+    }
+
+    private void pushFile(Path file) {
+        try {
+            push(Files.readString(file));
+        } catch (IOException | RuntimeException e) {
+            policySnapshotUpdateErrorCount.inc();
+            LOG.error("Rejected policy snapshot file {}, keeping the active snapshot", file, e);
+        }
+    }
+
+    void pull() {
+        pullPending.set(false);
+        try {
+            PolicySnapshot current = snapshot;
+            if (current != null) {
+                String delta = fetch("/policy/delta", String.valueOf(current.version));
+                if (delta != null) {
+                    try {
+                        push(delta);
+                        return;
+                    } catch (IllegalArgumentException e) {
+                        LOG.warn("Policy delta does not apply, pulling a full snapshot", e);
+                    }
+                }
+            }
+            String full = fetch("/policy/snapshot", null);
+            if (full == null) {
+                throw new IllegalStateException("The auth service has no policy snapshot");
+            }
+            push(full);
+        } catch (RuntimeException e) {
+            policySnapshotUpdateErrorCount.inc();
+            LOG.warn("Could not pull policy snapshot, keeping the active snapshot", e);
+        }
+    }
+
+    /**
+     * @return the response body, or null if the auth service has no such resource
+     */
+    private String fetch(String path, String since) {
+        var request = policyClient.get().path(path);
+        if (since != null) {
+            request.queryParam("since", since);
+        }
+        WebClientResponse response = request.request().await(30, TimeUnit.SECONDS);
+        int status = response.status().code();
+        if (status == 404 || status == 410) {
+            return null;
+        }
+        if (status != 200) {
+            throw new IllegalStateException("Pull of " + path + " failed with status " + status);
+        }
+        return response.content().as(String.class).await(30, TimeUnit.SECONDS);
+    }
+
+    public void close() {
+        puller.shutdownNow();
+        if (fileWatcher != null) {
+            fileWatcher.close();
+        }
+    }
+}
@@ -3,21 +3,23 @@ package no.ssb.dapla.data.access.service;
 import io.helidon.config.Config;
 
 import java.net.URI;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
 public class Route {
 
+    private final String scheme;
+    private final String host;
     private final URI uri;
     private final Map<String, String> auth;
 
     public Route(Config config) {
-        this.uri = config.get("target").get("uri").as(uri ->
-                URI.create(uri.get("scheme").asString().get() + "://" +
-                        uri.get("host").asString().get() +
-                        uri.get("path-prefix").asString().orElse("")
-                )).get();
-        this.auth = config.get("target").get("auth").detach().asMap().orElse(new HashMap<>());
+        Config uri = config.get("target").get("uri");
+        this.scheme = uri.get("scheme").asString().get();
+        this.host = uri.get("host").asString().get();
+        this.uri = URI.create(scheme + "://" + host + uri.get("path-prefix").asString().orElse(""));
+        this.auth = Collections.unmodifiableMap(config.get("target").get("auth").detach().asMap().orElse(new HashMap<>()));
     }
 
     public URI getUri() {
@@ -27,4 +29,18 @@ public class Route {
     public Map<String, String> getAuth() {
         return auth;
     }
+
+    /**
+     * The target scheme exactly as configured
+     */
+    public String getScheme() {
+        return scheme;
+    }
+
+    /**
+     * The target host exactly as configured, may be empty
+     */
+    public String getHost() {
+        return host;
+    }
 }
@@ -0,0 +1,91 @@
+package no.ssb.dapla.data.access.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.helidon.metrics.RegistryFactory;
+import no.ssb.dapla.dataset.api.DatasetState;
+import no.ssb.dapla.dataset.api.Valuation;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Size bounded memo of route resolutions against one {@link RoutingTable}, including resolutions that found no route.
+ * <p>
+ * Eviction is frequency aware (Caffeine's W-TinyLFU), so the handful of paths that make up most of the write and
+ * delete traffic stay cached. A route cache belongs to a single routing table and is replaced together with it,
+ * so a reload can never leave stale resolutions behind.
+ */
+class RouteCache {
+
+    private final RoutingTable routingTable;
+    private final Cache<RouteKey, Optional<Route>> resolutions;
+    private final Counter routeCacheHitCount;
+    private final Counter routeCacheMissCount;
+
+    RouteCache(RoutingTable routingTable, long maxSize) {
+        this.routingTable = routingTable;
+        RegistryFactory metricsRegistry = RegistryFactory.getInstance();
+        MetricRegistry appRegistry = metricsRegistry.getRegistry(MetricRegistry.Type.APPLICATION);
+        this.routeCacheHitCount = appRegistry.counter("routeCacheHitCount");
+        this.routeCacheMissCount = appRegistry.counter("routeCacheMissCount");
+        Counter routeCacheEvictionCount = appRegistry.counter("routeCacheEvictionCount");
+        this.resolutions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .<RouteKey, Optional<Route>>removalListener((key, route, cause) -> {
+                    if (cause.wasEvicted()) {
+                        routeCacheEvictionCount.inc();
+                    }
+                })
+                .build();
+    }
+
+    RoutingTable getRoutingTable() {
+        return routingTable;
+    }
+
+    /**
+     * @return the first matching route, or null if no route matches
+     */
+    Route route(String path, Valuation valuation, DatasetState state) {
+        RouteKey key = new RouteKey(path, valuation, state);
+        Optional<Route> route = resolutions.getIfPresent(key);
+        if (route != null) {
+            routeCacheHitCount.inc();
+            return route.orElse(null);
+        }
+        routeCacheMissCount.inc();
+        route = Optional.ofNullable(routingTable.route(path, valuation, state));
+        resolutions.put(key, route);
+        return route.orElse(null);
+    }
+
+    static class RouteKey {
+        final String path;
+        final Valuation valuation;
+        final DatasetState state;
+
+        RouteKey(String path, Valuation valuation, DatasetState state) {
+            this.path = path;
+            this.valuation = valuation;
+            this.state = state;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            RouteKey routeKey = (RouteKey) o;
+            return path.equals(routeKey.path) &&
+                    valuation == routeKey.valuation &&
+                    state == routeKey.state;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, valuation, state);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.config.Config;
+import no.ssb.dapla.dataset.api.DatasetState;
+import no.ssb.dapla.dataset.api.Valuation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * The routing configuration compiled into immutable rules.
+ * <p>
+ * Each entry of the {@code routing} list becomes a {@link RoutingRule} with its path prefixes as arrays, its
+ * valuation and state criteria resolved to the enum values they accept, and its target resolved to a {@link Route}.
+ * <p>
+ * All include and exclude path prefixes are indexed in a {@link PathPrefixTrie}. Resolving a route walks the trie
+ * along the path once to find the rules whose prefixes match, and then picks the first of those rules (in
+ * configuration order) that also accepts the valuation and state. The cost is proportional to the path length and
+ * the number of matching prefixes rather than to the size of the table.
+ * <p>
+ * Targets are indexed by scheme and host. Several rules may route to the same bucket, in which case the first of
+ * those rules decides the auth used when reading from the bucket, just like a first-match scan would. A warning is
+ * logged at load time if rules sharing a bucket disagree on the auth to use.
+ */
+public class RoutingTable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RoutingTable.class);
+
+    private final RoutingRule[] rules;
+    private final List<Route> routes;
+    private final PathPrefixTrie pathIndex;
+    private final Map<String, Map<String, Route>> targetIndex;
+
+    RoutingTable(List<RoutingRule> rules) {
+        this.rules = rules.toArray(new RoutingRule[0]);
+        this.routes = Collections.unmodifiableList(rules.stream().map(rule -> rule.route).collect(Collectors.toList()));
+        this.pathIndex = new PathPrefixTrie(this.rules);
+        this.targetIndex = indexTargets(routes);
+    }
+
+    private static Map<String, Map<String, Route>> indexTargets(List<Route> routes) {
+        Map<String, Map<String, Route>> index = new HashMap<>();
+        for (Route route : routes) {
+            Map<String, Route> hosts = index.computeIfAbsent(route.getScheme(), scheme -> new HashMap<>());
+            Route first = hosts.putIfAbsent(route.getHost(), route);
+            if (first != null && !Objects.equals(first.getAuth(), route.getAuth())) {
+                LOG.warn("Several routes target {}://{} with different auth, {} is used for reads and {} is ignored",
+                        route.getScheme(), route.getHost(), first.getAuth(), route.getAuth());
+            }
+        }
+        index.replaceAll((scheme, hosts) -> Map.copyOf(hosts));
+        return Map.copyOf(index);
+    }
+
+    /**
+     * Compile the {@code routing} list of the given config.
+     *
+     * @throws RuntimeException if the routing list is missing or an entry is invalid
+     */
+    public static RoutingTable create(Config config) {
+        List<Config> entries = config.get("routing").asNodeList().orElseThrow(() ->
+                new RuntimeException("Route configuration is missing"));
+        return new RoutingTable(entries.stream().map(RoutingRule::create).collect(Collectors.toList()));
+    }
+
+    /**
+     * @return the route of the first rule that matches, or null if no rule matches
+     */
+    Route route(String path, Valuation valuation, DatasetState state) {
+        int index = pathIndex.firstMatch(path, valuation, state);
+        return index < 0 ? null : rules[index].route;
+    }
+
+    /**
+     * @return the route of the first rule that targets the given scheme and host, or null if there is none
+     */
+    Route route(String scheme, String host) {
+        Map<String, Route> hosts = scheme == null ? null : targetIndex.get(scheme);
+        return hosts == null || host == null ? null : hosts.get(host);
+    }
+
+    List<Route> getRoutes() {
+        return routes;
+    }
+
+    int size() {
+        return rules.length;
+    }
+
+    static class RoutingRule {
+
+        private static final String[] NO_PREFIXES = new String[0];
+
+        /**
+         * Path prefixes of which at least one must match, or null if any path is accepted.
+         */
+        final String[] pathIncludes;
+        final String[] pathExcludes;
+        /**
+         * The accepted valuations, or null if the rule has no valuation criterion.
+         */
+        final EnumSet<Valuation> valuations;
+        /**
+         * The accepted states, or null if the rule has no state criterion.
+         */
+        final EnumSet<DatasetState> states;
+        final Route route;
+
+        RoutingRule(String[] pathIncludes, String[] pathExcludes, EnumSet<Valuation> valuations,
+                    EnumSet<DatasetState> states, Route route) {
+            this.pathIncludes = pathIncludes;
+            this.pathExcludes = pathExcludes;
+            this.valuations = valuations;
+            this.states = states;
+            this.route = route;
+        }
+
+        static RoutingRule create(Config entry) {
+            Config source = entry.get("source");
+            Config paths = source.get("paths");
+            return new RoutingRule(
+                    paths.get("includes").exists() ? asArray(paths.get("includes")) : null,
+                    paths.get("excludes").exists() ? asArray(paths.get("excludes")) : NO_PREFIXES,
+                    acceptedValues(source.get("valuations"), Valuation.class),
+                    acceptedValues(source.get("states"), DatasetState.class),
+                    new Route(entry)
+            );
+        }
+
+        boolean accepts(Valuation valuation, DatasetState state) {
+            return (valuations == null || valuations.contains(valuation)) && (states == null || states.contains(state));
+        }
+
+        private static String[] asArray(Config list) {
+            return list.asList(String.class).get().toArray(new String[0]);
+        }
+
+        /**
+         * Resolve an includes/excludes criterion to the set of enum values it accepts. Values are compared to the
+         * enum names ignoring case. A missing criterion is returned as null, it accepts every value.
+         */
+        static <E extends Enum<E>> EnumSet<E> acceptedValues(Config criterion, Class<E> type) {
+            if (!criterion.exists()) {
+                return null;
+            }
+            EnumSet<E> accepted = EnumSet.allOf(type);
+            List<String> excludes = criterion.get("excludes").asList(String.class).orElseGet(Collections::emptyList);
+            accepted.removeIf(value -> excludes.stream().anyMatch(value.name()::equalsIgnoreCase));
+            if (criterion.get("includes").exists()) {
+                List<String> includes = criterion.get("includes").asList(String.class).get();
+                accepted.removeIf(value -> includes.stream().noneMatch(value.name()::equalsIgnoreCase));
+            }
+            return accepted;
+        }
+    }
+}
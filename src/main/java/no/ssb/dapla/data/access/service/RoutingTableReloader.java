@@ -0,0 +1,110 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import io.helidon.metrics.RegistryFactory;
+import no.ssb.dapla.data.access.watch.FileWatcher;
+import org.eclipse.microprofile.metrics.Counter;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Watches the routing file and hands a freshly compiled {@link RoutingTable} to the listener whenever it changes.
+ * <p>
+ * A changed file is parsed and compiled in the background. Files that cannot be parsed, that contain an invalid
+ * entry or that contain no routes at all are rejected, and the active routing table stays in place.
+ */
+public class RoutingTableReloader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RoutingTableReloader.class);
+
+    private final Path routingFile;
+    private final Consumer<RoutingTable> onReload;
+    private final FileWatcher fileWatcher;
+
+    private final Counter routingReloadCount;
+    private final Counter routingReloadErrorCount;
+    private final AtomicLong lastReloadTimestamp = new AtomicLong(System.currentTimeMillis());
+    private final AtomicInteger ruleCount = new AtomicInteger();
+
+    /**
+     * @param routingFile  the routing file to watch
+     * @param initial      the routing table currently in use
+     * @param pollInterval millis between polling checks of the routing file, 0 or less to disable polling
+     * @param onReload     called with the new routing table after the file has changed
+     */
+    public RoutingTableReloader(Path routingFile, RoutingTable initial, long pollInterval, Consumer<RoutingTable> onReload) {
+        this.routingFile = routingFile;
+        this.onReload = onReload;
+        this.ruleCount.set(initial.size());
+        RegistryFactory metricsRegistry = RegistryFactory.getInstance();
+        MetricRegistry appRegistry = metricsRegistry.getRegistry(MetricRegistry.Type.APPLICATION);
+        this.routingReloadCount = appRegistry.counter("routingReloadCount");
+        this.routingReloadErrorCount = appRegistry.counter("routingReloadErrorCount");
+        appRegistry.remove("routingLastReloadTimestamp");
+        appRegistry.register("routingLastReloadTimestamp", (Gauge<Long>) lastReloadTimestamp::get);
+        appRegistry.remove("routingRuleCount");
+        appRegistry.register("routingRuleCount", (Gauge<Integer>) ruleCount::get);
+        this.fileWatcher = new FileWatcher("routing", pollInterval, file -> reload());
+        fileWatcher.watch(routingFile);
+    }
+
+    /**
+     * Load and compile a routing file.
+     *
+     * @throws RuntimeException if the file cannot be parsed or does not contain a valid routing table
+     */
+    public static RoutingTable load(Path routingFile) {
+        RoutingTable routingTable = RoutingTable.create(loadConfig(routingFile));
+        if (routingTable.size() == 0) {
+            throw new IllegalArgumentException("Routing file " + routingFile + " contains no routes");
+        }
+        return routingTable;
+    }
+
+    /**
+     * Read a routing file as config, without environment variables and system properties, so that the same file always
+     * gives the same routing table at startup and on reload.
+     */
+    public static Config loadConfig(Path routingFile) {
+        return Config.builder()
+                .disableEnvironmentVariablesSource()
+                .disableSystemPropertiesSource()
+                .sources(ConfigSources.file(routingFile.toString()))
+                .build();
+    }
+
+    void reload() {
+        RoutingTable routingTable;
+        try {
+            routingTable = load(routingFile);
+        } catch (RuntimeException e) {
+            routingReloadErrorCount.inc();
+            LOG.error("Rejected changed routing file {}, keeping the active routing table", routingFile, e);
+            return;
+        }
+        onReload.accept(routingTable);
+        ruleCount.set(routingTable.size());
+        lastReloadTimestamp.set(System.currentTimeMillis());
+        routingReloadCount.inc();
+        LOG.info("Reloaded routing file {} with {} routes", routingFile, routingTable.size());
+    }
+
+    /**
+     * @return the time in millis when the active routing table was loaded
+     */
+    public long getLastReloadTimestamp() {
+        return lastReloadTimestamp.get();
+    }
+
+    public void close() {
+        fileWatcher.close();
+    }
+}
@@ -0,0 +1,323 @@
+package no.ssb.dapla.data.access.service;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTDecodeException;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.helidon.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.RSAPublicKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Verifies the signature, issuer and expiry of bearer tokens, for access decisions that are made without the auth
+ * service, see {@link PolicySnapshotUserAccessClient}.
+ * <p>
+ * The issuer keys are read from PEM files (public keys or certificates) or fetched from a JWKS endpoint. Keys are
+ * looked up by the key id of the token. When a token names a key id that is not known, the token is rejected right
+ * away and the JWKS endpoint is fetched again in the background, at most every {@link #JWKS_REFRESH_INTERVAL} millis,
+ * so that verification never waits for the endpoint. Only RSA and ECDSA signed tokens are accepted, and a token must
+ * have an expiry.
+ */
+public class TokenVerifier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenVerifier.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    static final long JWKS_REFRESH_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+
+    private final String issuer;
+    private final long leeway;
+    private final URI jwksUri;
+    private final long jwksRefreshInterval;
+    private final HttpClient httpClient;
+    private final AtomicBoolean jwksFetching = new AtomicBoolean();
+    private volatile Map<String, PublicKey> keys;
+    private volatile long lastJwksFetch;
+    /**
+     * Tokens that have been verified, their expiry is checked again on every use.
+     */
+    private final Cache<String, DecodedJWT> verified = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(5, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * Configured from the {@code issuer}, {@code jwks-uri}, {@code public-key-files} and {@code leeway} (seconds) keys
+     * of the given config node.
+     *
+     * @throws IllegalStateException if no issuer, or neither a JWKS endpoint nor key files are configured
+     */
+    public static TokenVerifier create(Config config) {
+        String issuer = config.get("issuer").asString().orElseThrow(() ->
+                new IllegalStateException("missing configuration: " + config.key() + ".issuer"));
+        URI jwksUri = config.get("jwks-uri").asString().map(URI::create).orElse(null);
+        List<String> keyFiles = config.get("public-key-files").asList(String.class).orElse(List.of());
+        if (jwksUri == null && keyFiles.isEmpty()) {
+            throw new IllegalStateException("missing configuration: " + config.key() + ".jwks-uri or " + config.key() + ".public-key-files");
+        }
+        Map<String, PublicKey> keys = new LinkedHashMap<>();
+        for (String keyFile : keyFiles) {
+            keys.put(Path.of(keyFile).getFileName().toString(), readPem(Path.of(keyFile)));
+        }
+        return new TokenVerifier(issuer, keys, jwksUri, TimeUnit.SECONDS.toMillis(config.get("leeway").asLong().orElse(30L)));
+    }
+
+    /**
+     * @param keys    issuer keys by key id
+     * @param jwksUri endpoint to fetch more keys from, or null
+     * @param leeway  millis of clock skew accepted on expiry
+     */
+    TokenVerifier(String issuer, Map<String, PublicKey> keys, URI jwksUri, long leeway) {
+        this(issuer, keys, jwksUri, leeway, JWKS_REFRESH_INTERVAL);
+    }
+
+    /**
+     * @param jwksRefreshInterval min millis between fetches of the JWKS endpoint
+     */
+    TokenVerifier(String issuer, Map<String, PublicKey> keys, URI jwksUri, long leeway, long jwksRefreshInterval) {
+        this.issuer = issuer;
+        this.leeway = leeway;
+        this.jwksUri = jwksUri;
+        this.jwksRefreshInterval = jwksRefreshInterval;
+        this.keys = Map.copyOf(keys);
+        this.httpClient = jwksUri == null ? null : HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+        if (jwksUri != null) {
+            // the initial keys are fetched before the verifier is used
+            jwksFetching.set(true);
+            fetchJwks().join();
+        }
+    }
+
+    /**
+     * @return the verified token
+     * @throws JWTVerificationException if the token is not signed by the issuer, is expired or has no expiry
+     */
+    public DecodedJWT verify(String token) {
+        DecodedJWT decoded = verified.getIfPresent(token);
+        if (decoded == null) {
+            decoded = verifySignature(token);
+            verified.put(token, decoded);
+        }
+        if (decoded.getExpiresAt() == null) {
+            throw new JWTVerificationException("Token has no expiry");
+        }
+        if (decoded.getExpiresAt().getTime() + leeway < System.currentTimeMillis()) {
+            verified.invalidate(token);
+            throw new JWTVerificationException("Token expired at " + decoded.getExpiresAt());
+        }
+        return decoded;
+    }
+
+    private DecodedJWT verifySignature(String token) {
+        DecodedJWT unverified;
+        try {
+            unverified = JWT.decode(token);
+        } catch (JWTDecodeException e) {
+            throw new JWTVerificationException("Token cannot be decoded", e);
+        }
+        String keyId = unverified.getKeyId();
+        List<PublicKey> candidates = candidates(keyId);
+        if (candidates.isEmpty() && jwksUri != null && keyId != null) {
+            refreshJwks();
+        }
+        JWTVerificationException failure = new JWTVerificationException("No issuer key " + keyId + " for token");
+        for (PublicKey key : candidates) {
+            try {
+                return JWT.require(algorithm(unverified.getAlgorithm(), key))
+                        .withIssuer(issuer)
+                        .acceptLeeway(TimeUnit.MILLISECONDS.toSeconds(leeway))
+                        .build()
+                        .verify(token);
+            } catch (JWTVerificationException e) {
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    private List<PublicKey> candidates(String keyId) {
+        Map<String, PublicKey> keys = this.keys;
+        if (keyId == null) {
+            return List.copyOf(keys.values());
+        }
+        PublicKey key = keys.get(keyId);
+        return key == null ? List.of() : List.of(key);
+    }
+
+    static Algorithm algorithm(String name, PublicKey key) {
+        switch (String.valueOf(name)) {
+            case "RS256":
+            case "RS384":
+            case "RS512":
+                if (!(key instanceof RSAPublicKey)) {
+                    throw new JWTVerificationException("Token algorithm " + name + " does not match the issuer key");
+                }
+                RSAPublicKey rsaKey = (RSAPublicKey) key;
+                return "RS256".equals(name) ? Algorithm.RSA256(rsaKey, null)
+                        : "RS384".equals(name) ? Algorithm.RSA384(rsaKey, null) : Algorithm.RSA512(rsaKey, null);
+            case "ES256":
+            case "ES384":
+            case "ES512":
+                if (!(key instanceof ECPublicKey)) {
+                    throw new JWTVerificationException("Token algorithm " + name + " does not match the issuer key");
+                }
+                ECPublicKey ecKey = (ECPublicKey) key;
+                return "ES256".equals(name) ? Algorithm.ECDSA256(ecKey, null)
+                        : "ES384".equals(name) ? Algorithm.ECDSA384(ecKey, null) : Algorithm.ECDSA512(ecKey, null);
+            default:
+                throw new JWTVerificationException("Token algorithm " + name + " is not accepted");
+        }
+    }
+
+    /**
+     * Start fetching the JWKS endpoint in the background, unless a fetch is running or the last one was too recent.
+     */
+    private void refreshJwks() {
+        if (System.currentTimeMillis() - lastJwksFetch <= jwksRefreshInterval || !jwksFetching.compareAndSet(false, true)) {
+            return;
+        }
+        fetchJwks();
+    }
+
+    /**
+     * Fetch the JWKS endpoint and add its keys, the caller must have set {@link #jwksFetching}.
+     *
+     * @return completes when the keys are added or the fetch failed, never exceptionally
+     */
+    private CompletableFuture<Void> fetchJwks() {
+        lastJwksFetch = System.currentTimeMillis();
+        return httpClient.sendAsync(HttpRequest.newBuilder(jwksUri)
+                        .timeout(Duration.ofSeconds(10))
+                        .GET()
+                        .build(), HttpResponse.BodyHandlers.ofString())
+                .thenAccept(response -> {
+                    if (response.statusCode() != 200) {
+                        LOG.warn("Unable to fetch issuer keys from {}, status {}", jwksUri, response.statusCode());
+                        return;
+                    }
+                    try {
+                        Map<String, PublicKey> keys = new LinkedHashMap<>(this.keys);
+                        keys.putAll(parseJwks(response.body()));
+                        this.keys = Map.copyOf(keys);
+                    } catch (IOException e) {
+                        LOG.warn("Unable to parse issuer keys from {}", jwksUri, e);
+                    }
+                })
+                .exceptionally(throwable -> {
+                    LOG.warn("Unable to fetch issuer keys from {}", jwksUri, throwable);
+                    return null;
+                })
+                .whenComplete((done, throwable) -> jwksFetching.set(false));
+    }
+
+    /**
+     * @return the RSA and EC keys of a JWKS document by key id, other keys are skipped
+     */
+    static Map<String, PublicKey> parseJwks(String jwks) throws IOException {
+        Map<String, PublicKey> keys = new LinkedHashMap<>();
+        for (JsonNode jwk : MAPPER.readTree(jwks).path("keys")) {
+            String keyId = jwk.path("kid").asText("");
+            if (keyId.isEmpty() || "enc".equals(jwk.path("use").asText())) {
+                continue;
+            }
+            try {
+                switch (jwk.path("kty").asText()) {
+                    case "RSA":
+                        keys.put(keyId, KeyFactory.getInstance("RSA").generatePublic(new RSAPublicKeySpec(
+                                unsigned(jwk.path("n").asText()), unsigned(jwk.path("e").asText()))));
+                        break;
+                    case "EC":
+                        AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+                        parameters.init(new ECGenParameterSpec(curve(jwk.path("crv").asText())));
+                        ECPoint point = new ECPoint(unsigned(jwk.path("x").asText()), unsigned(jwk.path("y").asText()));
+                        keys.put(keyId, KeyFactory.getInstance("EC").generatePublic(
+                                new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class))));
+                        break;
+                    default:
+                        // not a signature key type that tokens are accepted with
+                }
+            } catch (GeneralSecurityException | IllegalArgumentException e) {
+                LOG.warn("Skipping invalid issuer key {}", keyId, e);
+            }
+        }
+        return keys;
+    }
+
+    private static String curve(String crv) {
+        switch (crv) {
+            case "P-256":
+                return "secp256r1";
+            case "P-384":
+                return "secp384r1";
+            case "P-521":
+                return "secp521r1";
+            default:
+                throw new IllegalArgumentException("Unsupported curve " + crv);
+        }
+    }
+
+    private static BigInteger unsigned(String base64Url) {
+        return new BigInteger(1, Base64.getUrlDecoder().decode(base64Url));
+    }
+
+    /**
+     * Read a PEM encoded public key or certificate.
+     */
+    static PublicKey readPem(Path file) {
+        try {
+            String pem = Files.readString(file);
+            if (pem.contains("BEGIN CERTIFICATE")) {
+                return CertificateFactory.getInstance("X.509")
+                        .generateCertificate(new ByteArrayInputStream(pem.getBytes()))
+                        .getPublicKey();
+            }
+            String base64 = pem.lines()
+                    .filter(line -> !line.startsWith("-----"))
+                    .collect(Collectors.joining());
+            X509EncodedKeySpec spec = new X509EncodedKeySpec(Base64.getMimeDecoder().decode(base64));
+            try {
+                return KeyFactory.getInstance("RSA").generatePublic(spec);
+            } catch (GeneralSecurityException e) {
+                return KeyFactory.getInstance("EC").generatePublic(spec);
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to read issuer key " + file, e);
+        }
+    }
+}
@@ -6,8 +6,15 @@ import no.ssb.dapla.auth.dataset.protobuf.AccessCheckResponse;
 import no.ssb.dapla.auth.dataset.protobuf.Privilege;
 import no.ssb.dapla.dataset.api.DatasetMeta;
 
+import java.util.List;
+
 public interface UserAccessClient {
 
+    /**
+     * Number of single checks in flight when a bulk check cannot be sent in one call.
+     */
+    int BULK_FALLBACK_PARALLELISM = 16;
+
     default Single<AccessCheckResponse> hasAccess(AccessCheckRequest request, String jwtToken) {
         return hasAccess(request.getUserId(), request.getPrivilege(), request.getPath(), request.getValuation(), request.getState(), jwtToken)
                 .map(access -> AccessCheckResponse.newBuilder()
@@ -20,4 +27,14 @@ public interface UserAccessClient {
     }
 
     Single<Boolean> hasAccess(String userId, String privilege, String path, String valuation, String state, String jwtToken);
+
+    /**
+     * Check many accesses in one call, all with the given token. Unless overridden, the checks are run as concurrent
+     * single checks, at most {@link #BULK_FALLBACK_PARALLELISM} at a time.
+     *
+     * @return whether each check is allowed, in the order of the checks
+     */
+    default Single<List<Boolean>> hasAccess(List<AccessCheckRequest> checks, String jwtToken) {
+        return AccessCheckFanOut.hasAccess(this, checks, jwtToken, BULK_FALLBACK_PARALLELISM);
+    }
 }
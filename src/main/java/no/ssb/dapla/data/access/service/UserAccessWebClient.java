@@ -1,30 +1,73 @@
 package no.ssb.dapla.data.access.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.helidon.common.http.MediaType;
 import io.helidon.common.reactive.Single;
 import io.helidon.metrics.RegistryFactory;
 import io.helidon.webclient.WebClient;
+import no.ssb.dapla.auth.dataset.protobuf.AccessCheckRequest;
 import org.eclipse.microprofile.metrics.Counter;
 import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Checks access with the auth service.
+ * <p>
+ * Bulk checks are posted to {@code /access} as {@code {"items": [{"userId": ..., "privilege": ..., "path": ...,
+ * "valuation": ..., "state": ...}]}}, and answered with {@code {"results": [{"allowed": true}]}} in the same order.
+ * If the auth service does not support bulk checks, this client falls back to concurrent single checks, and probes
+ * bulk checks again after {@link #DEFAULT_BULK_RETRY_INTERVAL} millis, so an upgraded auth service is picked up
+ * without a restart.
+ */
 public class UserAccessWebClient implements UserAccessClient {
 
+    private static final Logger LOG = LoggerFactory.getLogger(UserAccessWebClient.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    static final long DEFAULT_BULK_RETRY_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
     private final WebClient webClient;
+    private final long bulkRetryInterval;
+    /**
+     * Time until which bulk checks are not tried, set when the auth service did not support them.
+     */
+    private volatile long bulkUnsupportedUntil;
     private final Counter userAccessWebClientGetAccessCompleteCount;
     private final Counter userAccessWebClientGetAccessErrorCount;
     private final Counter userAccessWebClientGetAccessCancelCount;
+    private final Counter userAccessWebClientBulkFallbackCount;
 
     public UserAccessWebClient(WebClient webClient) {
+        this(webClient, DEFAULT_BULK_RETRY_INTERVAL);
+    }
+
+    /**
+     * @param bulkRetryInterval millis to use single checks after the auth service did not support a bulk check
+     */
+    UserAccessWebClient(WebClient webClient, long bulkRetryInterval) {
         this.webClient = webClient;
+        this.bulkRetryInterval = bulkRetryInterval;
         RegistryFactory metricsRegistry = RegistryFactory.getInstance();
         MetricRegistry appRegistry = metricsRegistry.getRegistry(MetricRegistry.Type.APPLICATION);
         this.userAccessWebClientGetAccessCompleteCount = appRegistry.counter("userAccessWebClientGetAccessCompleteCount");
         this.userAccessWebClientGetAccessErrorCount = appRegistry.counter("userAccessWebClientGetAccessErrorCount");
         this.userAccessWebClientGetAccessCancelCount = appRegistry.counter("userAccessWebClientGetAccessCancelCount");
+        this.userAccessWebClientBulkFallbackCount = appRegistry.counter("userAccessWebClientBulkFallbackCount");
     }
 
     public UserAccessWebClient(URI baseUri) {
@@ -65,4 +108,68 @@ public class UserAccessWebClient implements UserAccessClient {
                 .onError(throwable -> userAccessWebClientGetAccessErrorCount.inc())
                 .map(wcr -> wcr.status().code() == 200);
     }
+
+    @Override
+    public Single<List<Boolean>> hasAccess(List<AccessCheckRequest> checks, String jwtToken) {
+        if (checks.isEmpty()) {
+            return Single.just(Collections.emptyList());
+        }
+        if (System.currentTimeMillis() < bulkUnsupportedUntil) {
+            userAccessWebClientBulkFallbackCount.inc();
+            return AccessCheckFanOut.hasAccess(this, checks, jwtToken, BULK_FALLBACK_PARALLELISM);
+        }
+        ObjectNode body = MAPPER.createObjectNode();
+        ArrayNode items = body.putArray("items");
+        for (AccessCheckRequest check : checks) {
+            items.addObject()
+                    .put("userId", check.getUserId())
+                    .put("privilege", check.getPrivilege())
+                    .put("path", check.getPath())
+                    .put("valuation", check.getValuation())
+                    .put("state", check.getState());
+        }
+        return webClient.post()
+                .path("/access")
+                .contentType(MediaType.APPLICATION_JSON)
+                .headers(headers -> {
+                    headers.put("Authorization", "Bearer " + jwtToken);
+                    return headers;
+                })
+                .submit(body.toString())
+                .onComplete(userAccessWebClientGetAccessCompleteCount::inc)
+                .onCancel(userAccessWebClientGetAccessCancelCount::inc)
+                .onError(throwable -> userAccessWebClientGetAccessErrorCount.inc())
+                .flatMapSingle(wcr -> {
+                    int status = wcr.status().code();
+                    if (status == 404 || status == 405 || status == 501) {
+                        bulkUnsupportedUntil = System.currentTimeMillis() + bulkRetryInterval;
+                        LOG.warn("Auth service does not support bulk access checks (status {}), using single checks for the next {} ms",
+                                status, bulkRetryInterval);
+                        userAccessWebClientBulkFallbackCount.inc();
+                        return AccessCheckFanOut.hasAccess(this, checks, jwtToken, BULK_FALLBACK_PARALLELISM);
+                    }
+                    if (status != 200) {
+                        // same as a single check, which denies on any status but 200
+                        return Single.just(Collections.nCopies(checks.size(), false));
+                    }
+                    return wcr.content().as(String.class).map(content -> parseDecisions(content, checks.size()));
+                });
+    }
+
+    static List<Boolean> parseDecisions(String content, int expectedCount) {
+        JsonNode results;
+        try {
+            results = MAPPER.readTree(content).path("results");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!results.isArray() || results.size() != expectedCount) {
+            throw new IllegalStateException("Expected " + expectedCount + " results of bulk access check, got " + results.size());
+        }
+        List<Boolean> decisions = new ArrayList<>(expectedCount);
+        for (JsonNode result : results) {
+            decisions.add(result.path("allowed").asBoolean(false));
+        }
+        return decisions;
+    }
 }
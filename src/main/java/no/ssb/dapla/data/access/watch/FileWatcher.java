@@ -0,0 +1,190 @@
+package no.ssb.dapla.data.access.watch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Notifies a listener when watched files change on disk.
+ * <p>
+ * The directories of all watched files are registered with a {@link WatchService}. Kubernetes mounts secrets and
+ * config maps through a symlinked {@code ..data} directory that is swapped on update, so any event in a watched
+ * directory triggers a fingerprint check of every watched file in that directory rather than relying on the event
+ * file name. All watched files are also checked every {@code pollInterval} millis, which covers file systems where
+ * the watch service does not deliver events.
+ * <p>
+ * The listener is called once per observed change, from a watcher thread. If the listener fails, for instance
+ * because the file was only partially written, it is called again on the next change of the file.
+ */
+public class FileWatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileWatcher.class);
+
+    private final ConcurrentMap<Path, Fingerprint> files = new ConcurrentHashMap<>();
+    private final Set<Path> watchedDirectories = ConcurrentHashMap.newKeySet();
+    private final String name;
+    private final Consumer<Path> onChange;
+    private final WatchService watchService;
+    private final ScheduledExecutorService poller;
+
+    /**
+     * @param name         used for thread names and logging
+     * @param pollInterval millis between polling checks of all watched files, 0 or less to disable polling
+     * @param onChange     called with the path, as given to {@link #watch(Path)}, of a file that has changed
+     */
+    public FileWatcher(String name, long pollInterval, Consumer<Path> onChange) {
+        this.name = name;
+        this.onChange = onChange;
+        this.watchService = newWatchService(name);
+        if (watchService != null) {
+            Thread watcher = new Thread(this::processWatchEvents, name + "-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+        this.poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-poller");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (pollInterval > 0) {
+            poller.scheduleWithFixedDelay(this::checkAll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Start watching the given file. Its current state is the baseline, the listener is only called for later changes.
+     */
+    public void watch(Path file) {
+        files.computeIfAbsent(file, FileWatcher::fingerprintOrMissing);
+        Path directory = directoryOf(file);
+        if (watchService == null || !watchedDirectories.add(directory)) {
+            return;
+        }
+        try {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            LOG.warn("{}: unable to watch {}, relying on polling", name, directory, e);
+        }
+    }
+
+    private void checkAll() {
+        files.keySet().forEach(this::check);
+    }
+
+    private void check(Path file) {
+        Fingerprint previous = files.get(file);
+        Fingerprint current = fingerprintOrMissing(file);
+        if (previous == null || previous.equals(current) || current == Fingerprint.MISSING) {
+            // unchanged, or removed in the middle of an update in which case the new file triggers another check
+            return;
+        }
+        if (!files.replace(file, previous, current)) {
+            return; // checked concurrently by the poller and the watcher
+        }
+        try {
+            onChange.accept(file);
+        } catch (RuntimeException e) {
+            LOG.warn("{}: failed to process change of {}", name, file, e);
+        }
+    }
+
+    private void processWatchEvents() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                key.pollEvents(); // drain, the directory is checked as a whole
+                Path directory = (Path) key.watchable();
+                files.keySet().stream()
+                        .filter(file -> directory.equals(directoryOf(file)))
+                        .forEach(this::check);
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // shutting down
+        }
+    }
+
+    public void close() {
+        poller.shutdownNow();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.debug("{}: while closing watch service", name, e);
+            }
+        }
+    }
+
+    private static WatchService newWatchService(String name) {
+        try {
+            return FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.warn("{}: watch service not available, relying on polling", name, e);
+            return null;
+        }
+    }
+
+    private static Path directoryOf(Path file) {
+        Path absolute = file.toAbsolutePath();
+        return absolute.getParent() != null ? absolute.getParent() : absolute;
+    }
+
+    private static Fingerprint fingerprintOrMissing(Path file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new Fingerprint(attributes.lastModifiedTime().toMillis(), attributes.size(), attributes.fileKey());
+        } catch (IOException e) {
+            return Fingerprint.MISSING;
+        }
+    }
+
+    /**
+     * Cheap change detection of a file, follows symlinks so that swapped mounts are detected.
+     */
+    static class Fingerprint {
+        static final Fingerprint MISSING = new Fingerprint(-1, -1, null);
+
+        final long lastModified;
+        final long size;
+        final Object fileKey;
+
+        Fingerprint(long lastModified, long size, Object fileKey) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.fileKey = fileKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Fingerprint that = (Fingerprint) o;
+            return lastModified == that.lastModified &&
+                    size == that.size &&
+                    Objects.equals(fileKey, that.fileKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lastModified, size, fileKey);
+        }
+    }
+}
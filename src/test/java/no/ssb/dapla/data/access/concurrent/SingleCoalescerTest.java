@@ -0,0 +1,103 @@
+package no.ssb.dapla.data.access.concurrent;
+
+import io.helidon.common.reactive.Single;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SingleCoalescerTest {
+
+    final AtomicInteger upstreamCalls = new AtomicInteger();
+    final AtomicInteger upstreamCancels = new AtomicInteger();
+    final AtomicReference<CompletableFuture<String>> upstream = new AtomicReference<>();
+
+    Single<String> upstream() {
+        upstreamCalls.incrementAndGet();
+        CompletableFuture<String> future = new CompletableFuture<>();
+        upstream.set(future);
+        return Single.create(future).onCancel(upstreamCancels::incrementAndGet);
+    }
+
+    @Test
+    void thatConcurrentIdenticalRequestsShareOneCall() {
+        SingleCoalescer<String, String> coalescer = new SingleCoalescer<>("test");
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(coalescer.get("key", this::upstream).toStage().toCompletableFuture());
+        }
+        CompletableFuture<String> other = coalescer.get("other", this::upstream).toStage().toCompletableFuture();
+        assertThat(upstreamCalls.get()).isEqualTo(2);
+        assertThat(coalescer.size()).isEqualTo(2);
+
+        upstream.get().complete("other-value");
+        assertThat(other.join()).isEqualTo("other-value");
+
+        assertThat(coalescer.size()).isEqualTo(1);
+        coalescer.get("other", this::upstream);
+        assertThat(upstreamCalls.get()).isEqualTo(3);
+    }
+
+    @Test
+    void thatCancelledSubscriberLeavesTheSharedCall() {
+        SingleCoalescer<String, String> coalescer = new SingleCoalescer<>("test");
+        Flow.Subscription first = subscribe(coalescer.get("key", this::upstream), new AtomicReference<>());
+        AtomicReference<String> second = new AtomicReference<>();
+        subscribe(coalescer.get("key", this::upstream), second);
+
+        first.cancel();
+        assertThat(upstreamCancels.get()).isEqualTo(0);
+
+        upstream.get().complete("value");
+        assertThat(second.get()).isEqualTo("value");
+        assertThat(upstreamCalls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void thatUpstreamIsCancelledWhenAllSubscribersCancel() {
+        SingleCoalescer<String, String> coalescer = new SingleCoalescer<>("test");
+        Flow.Subscription first = subscribe(coalescer.get("key", this::upstream), new AtomicReference<>());
+        Flow.Subscription second = subscribe(coalescer.get("key", this::upstream), new AtomicReference<>());
+
+        first.cancel();
+        second.cancel();
+        assertThat(upstreamCancels.get()).isEqualTo(1);
+        assertThat(coalescer.size()).isEqualTo(0);
+
+        CompletableFuture<String> retry = coalescer.get("key", this::upstream).toStage().toCompletableFuture();
+        assertThat(upstreamCalls.get()).isEqualTo(2);
+        upstream.get().complete("value");
+        assertThat(retry.join()).isEqualTo("value");
+    }
+
+    static Flow.Subscription subscribe(Single<String> single, AtomicReference<String> value) {
+        AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+        single.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription.set(s);
+                s.request(1);
+            }
+
+            @Override
+            public void onNext(String item) {
+                value.set(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return subscription.get();
+    }
+}
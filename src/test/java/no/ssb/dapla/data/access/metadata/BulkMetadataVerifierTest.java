@@ -0,0 +1,105 @@
+package no.ssb.dapla.data.access.metadata;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BulkMetadataVerifierTest {
+
+    MetadataSigner metadataSigner = new MetadataSigner(
+            "PKCS12",
+            "src/test/resources/metadata-signer_keystore.p12",
+            "dataAccessKeyPair",
+            "changeit".toCharArray(),
+            "SHA256withRSA"
+    );
+
+    @Test
+    void thatResultsAreReturnedInItemOrder() {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            BulkMetadataVerifier verifier = new BulkMetadataVerifier(metadataSigner, executor, 7, 3);
+            List<BulkMetadataVerifier.Item> items = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                byte[] data = ("{\"path\":\"/dataset-" + i + "\"}").getBytes(StandardCharsets.UTF_8);
+                byte[] signature = metadataSigner.sign(data);
+                switch (i % 4) {
+                    case 0 -> items.add(new BulkMetadataVerifier.Item(data, signature, null, null));
+                    case 1 -> items.add(new BulkMetadataVerifier.Item(data, signature, "dataAccessKeyPair", null));
+                    case 2 -> items.add(new BulkMetadataVerifier.Item("{}".getBytes(StandardCharsets.UTF_8), signature, null, null));
+                    default -> items.add(new BulkMetadataVerifier.Item(data, signature, "unknown", null));
+                }
+            }
+
+            boolean[] results = verifier.verify(items).join();
+
+            assertThat(results).hasSize(100);
+            for (int i = 0; i < results.length; i++) {
+                assertThat(results[i]).as("item %d", i).isEqualTo(i % 4 < 2);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void thatQueuedChunksAreCapped() {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger queued = new AtomicInteger();
+        AtomicInteger maxQueued = new AtomicInteger();
+        Executor countingExecutor = task -> {
+            maxQueued.accumulateAndGet(queued.incrementAndGet(), Math::max);
+            executor.execute(() -> {
+                queued.decrementAndGet();
+                task.run();
+            });
+        };
+        try {
+            BulkMetadataVerifier verifier = new BulkMetadataVerifier(metadataSigner, countingExecutor, 5, 2);
+            byte[] data = "{}".getBytes(StandardCharsets.UTF_8);
+            byte[] signature = metadataSigner.sign(data);
+            List<BulkMetadataVerifier.Item> items = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                items.add(new BulkMetadataVerifier.Item(data, signature, null, null));
+            }
+
+            boolean[] results = verifier.verify(items).join();
+
+            assertThat(results).hasSize(200).doesNotContain(false);
+            assertThat(maxQueued.get()).isLessThanOrEqualTo(2);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void thatRejectionFailsTheBatch() {
+        BulkMetadataVerifier verifier = new BulkMetadataVerifier(metadataSigner, task -> {
+            throw new RejectedExecutionException("full");
+        }, 10, 2);
+        byte[] data = "{}".getBytes(StandardCharsets.UTF_8);
+        assertThatThrownBy(() -> verifier.verify(List.of(new BulkMetadataVerifier.Item(data, new byte[3], null, null))).join())
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    void thatMalformedSignatureIsInvalid() {
+        BulkMetadataVerifier verifier = new BulkMetadataVerifier(metadataSigner, Runnable::run, 10, 2);
+        byte[] data = "{}".getBytes(StandardCharsets.UTF_8);
+        boolean[] results = verifier.verify(List.of(
+                new BulkMetadataVerifier.Item(data, new byte[3], null, null),
+                new BulkMetadataVerifier.Item(data, new byte[3], "dataAccessKeyPair", MerkleBatchSigner.FORMAT)
+        )).join();
+        assertThat(results).containsExactly(false, false);
+    }
+}
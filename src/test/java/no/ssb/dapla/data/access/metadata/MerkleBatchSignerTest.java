@@ -0,0 +1,78 @@
+package no.ssb.dapla.data.access.metadata;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MerkleBatchSignerTest {
+
+    MetadataSigner metadataSigner = new MetadataSigner(
+            "PKCS12",
+            "src/test/resources/metadata-signer_keystore.p12",
+            "dataAccessKeyPair",
+            "changeit".toCharArray(),
+            "SHA256withRSA"
+    );
+
+    @Test
+    void thatEveryDocumentOfABatchVerifiesOnItsOwn() {
+        for (int documents : new int[]{1, 2, 3, 7, 64, 100}) {
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            MerkleBatchSigner batchSigner = new MerkleBatchSigner(metadataSigner, executor, 64, 50);
+            try {
+                List<byte[]> data = new ArrayList<>();
+                List<CompletableFuture<byte[]>> signatures = new ArrayList<>();
+                for (int i = 0; i < documents; i++) {
+                    data.add(("{\"path\":\"/dataset-" + i + "\"}").getBytes(StandardCharsets.UTF_8));
+                    signatures.add(batchSigner.sign(data.get(i)));
+                }
+                for (int i = 0; i < documents; i++) {
+                    byte[] signature = signatures.get(i).join();
+                    assertThat(MerkleBatchSigner.verify(metadataSigner, "dataAccessKeyPair", data.get(i), signature))
+                            .as("document %d of %d", i, documents).isTrue();
+                    byte[] other = data.get((i + 1) % documents);
+                    if (documents > 1) {
+                        assertThat(MerkleBatchSigner.verify(metadataSigner, "dataAccessKeyPair", other, signature)).isFalse();
+                    }
+                }
+            } finally {
+                batchSigner.close();
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    void thatTamperedProofIsRejected() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        MerkleBatchSigner batchSigner = new MerkleBatchSigner(metadataSigner, executor, 4, 50);
+        try {
+            byte[] data = "{\"path\":\"/a\"}".getBytes(StandardCharsets.UTF_8);
+            CompletableFuture<byte[]> signature = batchSigner.sign(data);
+            for (int i = 0; i < 3; i++) {
+                batchSigner.sign(("{\"path\":\"/" + i + "\"}").getBytes(StandardCharsets.UTF_8));
+            }
+            byte[] tampered = signature.join().clone();
+            tampered[9] ^= 1; // first proof hash
+            assertThat(MerkleBatchSigner.verify(metadataSigner, "dataAccessKeyPair", data, signature.join())).isTrue();
+            assertThat(MerkleBatchSigner.verify(metadataSigner, "dataAccessKeyPair", data, tampered)).isFalse();
+        } finally {
+            batchSigner.close();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void thatRootSignatureIsNotAPlainSignature() {
+        byte[] root = MerkleBatchSigner.leafHash("{}".getBytes(StandardCharsets.UTF_8));
+        byte[] signedContent = MerkleBatchSigner.signedRootContent(1, root);
+        assertThat(metadataSigner.verify(root, metadataSigner.sign(signedContent))).isFalse();
+    }
+}
@@ -0,0 +1,68 @@
+package no.ssb.dapla.data.access.metadata;
+
+import no.ssb.dapla.dataset.api.DatasetId;
+import no.ssb.dapla.dataset.api.DatasetMeta;
+import no.ssb.dapla.dataset.api.DatasetMetaAll;
+import no.ssb.dapla.dataset.api.DatasetState;
+import no.ssb.dapla.dataset.api.Type;
+import no.ssb.dapla.dataset.api.Valuation;
+import no.ssb.helidon.media.protobuf.ProtobufJsonUtils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MetadataJsonTest {
+
+    static DatasetMeta datasetMeta(int pseudoVars) {
+        StringBuilder vars = new StringBuilder();
+        for (int i = 0; i < pseudoVars; i++) {
+            vars.append(i == 0 ? "" : ",")
+                    .append("{\"var\":\"fødselsnummer_").append(i).append("\",\"pseudoFunc\":\"fpe-fnr(secret1)\"}");
+        }
+        DatasetMeta datasetMeta = DatasetMeta.newBuilder()
+                .setId(DatasetId.newBuilder()
+                        .setPath("/raw/skatt/person/rawdata-2019")
+                        .setVersion("1582719098762")
+                        .build())
+                .setType(Type.BOUNDED)
+                .setValuation(Valuation.SENSITIVE)
+                .setState(DatasetState.RAW)
+                .setCreatedBy("brukør")
+                .build();
+        String json = ProtobufJsonUtils.toString(datasetMeta);
+        return ProtobufJsonUtils.toPojo(json.substring(0, json.lastIndexOf('}'))
+                + ",\"pseudoConfig\":{\"vars\":[" + vars + "]}}", DatasetMeta.class);
+    }
+
+    @Test
+    void thatJsonIsIdenticalToProtobufJsonUtils() {
+        for (int pseudoVars : new int[]{0, 1, 200}) {
+            DatasetMeta datasetMeta = datasetMeta(pseudoVars);
+            assertThat(MetadataJson.toJson(datasetMeta).toStringUtf8()).isEqualTo(ProtobufJsonUtils.toString(datasetMeta));
+        }
+    }
+
+    @Test
+    void thatEmptyAndNestedMessagesAreIdentical() {
+        DatasetMetaAll datasetMetaAll = DatasetMetaAll.newBuilder()
+                .setId(datasetMeta(0).getId())
+                .setParentUri("gs://ssb-data-staging/datastore/sensitive")
+                .build();
+        assertThat(MetadataJson.toJson(datasetMetaAll).toStringUtf8()).isEqualTo(ProtobufJsonUtils.toString(datasetMetaAll));
+        assertThat(MetadataJson.toJson(DatasetMeta.getDefaultInstance()).toStringUtf8())
+                .isEqualTo(ProtobufJsonUtils.toString(DatasetMeta.getDefaultInstance()));
+    }
+
+    @Test
+    void thatUtf8BufferEncodesLikeTheJdk() {
+        String[] texts = {"", "ascii", "brukør æøå", "€ and 中文", "emoji \uD83D\uDE00 pair", "unpaired \uD83D high",
+                "unpaired \uDE00 low", "trailing \uD83D", "x".repeat(100) + "ø".repeat(100) + "\uD83D\uDE00".repeat(100)};
+        for (String text : texts) {
+            MetadataJson.Utf8Buffer buffer = new MetadataJson.Utf8Buffer(1);
+            buffer.append(text.substring(0, text.length() / 2)).append(text, text.length() / 2, text.length());
+            assertThat(buffer.toByteString().toByteArray()).as(text).isEqualTo(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -1,11 +1,25 @@
 package no.ssb.dapla.data.access.metadata;
 
+import org.junit.jupiter.api.Test;
+
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.security.KeyStore;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class MetadataSignerTest {
 
@@ -17,6 +31,90 @@ public class MetadataSignerTest {
             "SHA256withRSA"
     );
 
+    @Test
+    void thatConcurrentSigningProducesValidSignatures() throws Exception {
+        Signature independentVerifier = Signature.getInstance("SHA256withRSA");
+        try (InputStream keystore = new FileInputStream("src/test/resources/metadata-signer_keystore.p12")) {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");
+            keyStore.load(keystore, "changeit".toCharArray());
+            independentVerifier.initVerify(keyStore.getCertificate("dataAccessKeyPair").getPublicKey());
+        }
+
+        int threads = 16;
+        int signaturesPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<List<byte[][]>>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                tasks.add(() -> {
+                    List<byte[][]> signed = new ArrayList<>();
+                    for (int i = 0; i < signaturesPerThread; i++) {
+                        byte[] data = ("{\"path\":\"/thread-" + thread + "/dataset-" + i + "\"}").getBytes(StandardCharsets.UTF_8);
+                        byte[] signature = metadataSigner.sign(data);
+                        assertThat(metadataSigner.verify(data, signature)).isTrue();
+                        signed.add(new byte[][]{data, signature});
+                    }
+                    return signed;
+                });
+            }
+            int verified = 0;
+            for (Future<List<byte[][]>> future : executor.invokeAll(tasks)) {
+                for (byte[][] signed : future.get()) {
+                    independentVerifier.update(signed[0]);
+                    assertThat(independentVerifier.verify(signed[1])).isTrue();
+                    verified++;
+                }
+            }
+            assertThat(verified).isEqualTo(threads * signaturesPerThread);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void thatTamperedMetadataIsRejected() {
+        byte[] signature = metadataSigner.sign("{\"path\":\"/a\"}".getBytes(StandardCharsets.UTF_8));
+        assertThat(metadataSigner.verify("{\"path\":\"/b\"}".getBytes(StandardCharsets.UTF_8), signature)).isFalse();
+        assertThat(metadataSigner.verify("{\"path\":\"/a\"}".getBytes(StandardCharsets.UTF_8), signature)).isTrue();
+    }
+
+    @Test
+    void thatAllKeyTypesSignAndVerifyByKeyId() {
+        List<MetadataSigner.KeyConfig> keys = List.of(
+                new MetadataSigner.KeyConfig("rsa", "rsa2020", null),
+                new MetadataSigner.KeyConfig("ec", "ec2021", null),
+                new MetadataSigner.KeyConfig("ed25519", "ed2022", null));
+        byte[] data = "{\"path\":\"/a\"}".getBytes(StandardCharsets.UTF_8);
+        for (MetadataSigner.KeyConfig key : keys) {
+            MetadataSigner signer = new MetadataSigner("PKCS12", "src/test/resources/metadata-signer_multikey_keystore.p12",
+                    "changeit".toCharArray(), keys, key.keyId);
+            byte[] signature = signer.sign(data);
+            assertThat(signer.verify(key.keyId, data, signature)).isTrue();
+            assertThat(signer.verify(data, signature)).isTrue();
+            assertThat(signer.verify("{\"path\":\"/b\"}".getBytes(StandardCharsets.UTF_8), signature)).isFalse();
+        }
+    }
+
+    @Test
+    void thatSignaturesOfRotatedKeyStillVerify() {
+        List<MetadataSigner.KeyConfig> keys = List.of(
+                new MetadataSigner.KeyConfig("rsa", "rsa2020", "SHA256withRSA"),
+                new MetadataSigner.KeyConfig("ed25519", "ed2022", "Ed25519"));
+        byte[] data = "{\"path\":\"/a\"}".getBytes(StandardCharsets.UTF_8);
+        MetadataSigner before = new MetadataSigner("PKCS12", "src/test/resources/metadata-signer_multikey_keystore.p12",
+                "changeit".toCharArray(), keys, "rsa");
+        MetadataSigner after = new MetadataSigner("PKCS12", "src/test/resources/metadata-signer_multikey_keystore.p12",
+                "changeit".toCharArray(), keys, "ed25519");
+        byte[] oldSignature = before.sign(data);
+
+        assertThat(after.getActiveKeyId()).isEqualTo("ed25519");
+        assertThat(after.sign(data)).hasSize(64);
+        assertThat(after.verify("rsa", data, oldSignature)).isTrue();
+        assertThat(after.verify(data, oldSignature)).isTrue();
+        assertThatThrownBy(() -> after.verify("unknown", data, oldSignature)).isInstanceOf(IllegalArgumentException.class);
+    }
+
     //@Test
     public void thatMetadataSignWorks() throws IOException {
         signDatasets("../localstack/bin/testdata",
@@ -0,0 +1,88 @@
+package no.ssb.dapla.data.access.oauth;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GoogleAccessTokenCacheTest {
+
+    private static final long ONE_HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    void thatCachedTokenIsServedUntilMinRemaining() {
+        AtomicInteger mints = new AtomicInteger();
+        GoogleAccessTokenCache cache = new GoogleAccessTokenCache((jsonPath, lifetime, scope) ->
+                new GoogleCredentialsDetails(null, "sa", "token-" + mints.incrementAndGet(),
+                        System.currentTimeMillis() + ONE_HOUR), Runnable::run, 300_000, 600_000);
+        try {
+            assertThat(cache.get("key.json", 3600, "read").join().getAccessToken()).isEqualTo("token-1");
+            assertThat(cache.get("key.json", 3600, "read").join().getAccessToken()).isEqualTo("token-1");
+            assertThat(cache.get("key.json", 3600, "write").join().getAccessToken()).isEqualTo("token-2");
+            assertThat(mints.get()).isEqualTo(2);
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    void thatNearlyExpiredTokenIsMintedAgain() {
+        AtomicInteger mints = new AtomicInteger();
+        GoogleAccessTokenCache cache = new GoogleAccessTokenCache((jsonPath, lifetime, scope) ->
+                new GoogleCredentialsDetails(null, "sa", "token-" + mints.incrementAndGet(),
+                        System.currentTimeMillis() + 60_000), Runnable::run, 300_000, 600_000);
+        try {
+            cache.get("key.json", 3600, "read").join();
+            cache.get("key.json", 3600, "read").join();
+            assertThat(mints.get()).isGreaterThanOrEqualTo(2);
+        } finally {
+            cache.close();
+        }
+    }
+
+    @Test
+    void thatConcurrentMissesShareOneMint() throws Exception {
+        AtomicInteger mints = new AtomicInteger();
+        CountDownLatch minting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GoogleAccessTokenCache cache = new GoogleAccessTokenCache((jsonPath, lifetime, scope) -> {
+            mints.incrementAndGet();
+            minting.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return new GoogleCredentialsDetails(null, "sa", "token", System.currentTimeMillis() + ONE_HOUR);
+        }, Runnable::run, 300_000, 600_000);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            CompletableFuture<GoogleCredentialsDetails> first = CompletableFuture.supplyAsync(() ->
+                    cache.get("key.json", 3600, "read").join(), executor);
+            assertThat(minting.await(10, TimeUnit.SECONDS)).isTrue();
+
+            List<CompletableFuture<GoogleCredentialsDetails>> waiters = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                waiters.add(cache.get("key.json", 3600, "read"));
+            }
+            release.countDown();
+
+            assertThat(first.get(10, TimeUnit.SECONDS).getAccessToken()).isEqualTo("token");
+            for (CompletableFuture<GoogleCredentialsDetails> waiter : waiters) {
+                assertThat(waiter.get(10, TimeUnit.SECONDS).getAccessToken()).isEqualTo("token");
+            }
+            assertThat(mints.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+            cache.close();
+        }
+    }
+}
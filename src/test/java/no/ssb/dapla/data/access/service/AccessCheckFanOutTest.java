@@ -0,0 +1,50 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.common.reactive.Single;
+import no.ssb.dapla.auth.dataset.protobuf.AccessCheckRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AccessCheckFanOutTest {
+
+    @Test
+    void thatChecksAreAnsweredInOrderWithBoundedParallelism() {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ConcurrentLinkedQueue<CompletableFuture<Boolean>> pending = new ConcurrentLinkedQueue<>();
+        UserAccessClient client = (userId, privilege, path, valuation, state, jwtToken) -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            CompletableFuture<Boolean> decision = new CompletableFuture<>();
+            pending.add(decision);
+            boolean allowed = Integer.parseInt(path.substring(1)) % 2 == 0;
+            return Single.create(decision.thenApply(ignored -> {
+                inFlight.decrementAndGet();
+                return allowed;
+            }), true);
+        };
+        List<AccessCheckRequest> checks = IntStream.range(0, 20)
+                .mapToObj(i -> AccessCheckRequest.newBuilder().setUserId("user").setPath("/" + i).build())
+                .collect(Collectors.toList());
+
+        CompletableFuture<List<Boolean>> decisions = AccessCheckFanOut.hasAccess(client, checks, "token", 3)
+                .toStage().toCompletableFuture();
+        while (!decisions.isDone()) {
+            CompletableFuture<Boolean> next = pending.poll();
+            assertThat(next).isNotNull();
+            next.complete(true);
+        }
+
+        assertThat(maxInFlight.get()).isEqualTo(3);
+        assertThat(decisions.join()).containsExactlyElementsOf(IntStream.range(0, 20)
+                .mapToObj(i -> i % 2 == 0)
+                .collect(Collectors.toList()));
+    }
+}
@@ -0,0 +1,84 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.common.reactive.Single;
+import no.ssb.dapla.catalog.protobuf.Dataset;
+import no.ssb.dapla.catalog.protobuf.DatasetId;
+import no.ssb.dapla.catalog.protobuf.GetDatasetRequest;
+import no.ssb.dapla.catalog.protobuf.GetDatasetResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CachingCatalogClientTest {
+
+    final AtomicInteger calls = new AtomicInteger();
+
+    final CatalogClient catalog = (request, jwtToken) -> {
+        calls.incrementAndGet();
+        if (request.getPath().equals("/missing")) {
+            return Single.just(GetDatasetResponse.newBuilder().build());
+        }
+        return Single.just(GetDatasetResponse.newBuilder()
+                .setDataset(Dataset.newBuilder()
+                        .setId(DatasetId.newBuilder().setPath(request.getPath()).setTimestamp(1))
+                        .build())
+                .build());
+    };
+
+    @Test
+    void thatPastSnapshotsAreCached() {
+        CachingCatalogClient client = new CachingCatalogClient(catalog, 100, 0, 60_000);
+        GetDatasetResponse first = client.get("/path/to/dataset", 1000L, "token").await();
+        GetDatasetResponse second = client.get("/path/to/dataset", 1000L, "token").await();
+        assertThat(second).isEqualTo(first);
+        assertThat(calls.get()).isEqualTo(1);
+
+        client.get("/path/to/dataset", 2000L, "token").await();
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void thatLatestAndMissingAreNotCachedWithoutTtl() {
+        CachingCatalogClient client = new CachingCatalogClient(catalog, 100, 0, 60_000);
+        client.get("/path/to/dataset", 0L, "token").await();
+        client.get("/path/to/dataset", 0L, "token").await();
+        client.get("/missing", 1000L, "token").await();
+        client.get("/missing", 1000L, "token").await();
+        long future = System.currentTimeMillis() + 60_000;
+        client.get("/path/to/dataset", future, "token").await();
+        client.get("/path/to/dataset", future, "token").await();
+        assertThat(calls.get()).isEqualTo(6);
+    }
+
+    @Test
+    void thatRecentSnapshotsAreNotCachedForeverWithoutLatestTtl() {
+        CachingCatalogClient client = new CachingCatalogClient(catalog, 100, 0, 60_000);
+        long recent = System.currentTimeMillis() - 1000;
+        client.get("/path/to/dataset", recent, "token").await();
+        client.get("/path/to/dataset", recent, "token").await();
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void thatResponsesAreCachedPerToken() {
+        CachingCatalogClient client = new CachingCatalogClient(catalog, 100, 60_000, 60_000);
+        client.get("/path/to/dataset", 1000L, "token").await();
+        client.get("/path/to/dataset", 1000L, "other-token").await();
+        client.get("/path/to/dataset", 0L, "token").await();
+        client.get("/path/to/dataset", 0L, "other-token").await();
+        assertThat(calls.get()).isEqualTo(4);
+        client.get("/path/to/dataset", 1000L, "other-token").await();
+        client.get("/path/to/dataset", 0L, "other-token").await();
+        assertThat(calls.get()).isEqualTo(4);
+    }
+
+    @Test
+    void thatLatestIsCachedWithinTtl() {
+        CachingCatalogClient client = new CachingCatalogClient(catalog, 100, 60_000, 60_000);
+        client.get(GetDatasetRequest.newBuilder().setPath("/path/to/dataset").build(), "token").await();
+        client.get(GetDatasetRequest.newBuilder().setPath("/path/to/dataset").build(), "token").await();
+        assertThat(calls.get()).isEqualTo(1);
+    }
+}
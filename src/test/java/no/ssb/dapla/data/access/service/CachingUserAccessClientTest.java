@@ -0,0 +1,137 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.common.reactive.Single;
+import no.ssb.dapla.auth.dataset.protobuf.AccessCheckRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CachingUserAccessClientTest {
+
+    final AtomicInteger calls = new AtomicInteger();
+
+    final UserAccessClient auth = (userId, privilege, path, valuation, state, jwtToken) -> {
+        calls.incrementAndGet();
+        return Single.just(!path.startsWith("/denied"));
+    };
+
+    @Test
+    void thatGrantsAreCachedPerToken() {
+        CachingUserAccessClient client = new CachingUserAccessClient(auth, 100, 60_000, 0);
+        assertThat(client.hasAccess("user", "READ", "/a", "OPEN", "RAW", "token").await()).isTrue();
+        assertThat(client.hasAccess("user", "READ", "/a", "OPEN", "RAW", "token").await()).isTrue();
+        assertThat(calls.get()).isEqualTo(1);
+
+        client.hasAccess("user", "READ", "/a", "OPEN", "RAW", "other-token").await();
+        client.hasAccess("user", "WRITE", "/a", "OPEN", "RAW", "token").await();
+        assertThat(calls.get()).isEqualTo(3);
+    }
+
+    @Test
+    void thatDenialsUseTheirOwnTtl() {
+        CachingUserAccessClient client = new CachingUserAccessClient(auth, 100, 0, 60_000);
+        assertThat(client.hasAccess("user", "READ", "/denied", "OPEN", "RAW", "token").await()).isFalse();
+        assertThat(client.hasAccess("user", "READ", "/denied", "OPEN", "RAW", "token").await()).isFalse();
+        client.hasAccess("user", "READ", "/a", "OPEN", "RAW", "token").await();
+        client.hasAccess("user", "READ", "/a", "OPEN", "RAW", "token").await();
+        assertThat(calls.get()).isEqualTo(3);
+    }
+
+    @Test
+    void thatFlushForgetsOneUser() {
+        CachingUserAccessClient client = new CachingUserAccessClient(auth, 100, 60_000, 60_000);
+        client.hasAccess("user", "READ", "/a", "OPEN", "RAW", "token").await();
+        client.hasAccess("user", "READ", "/denied", "OPEN", "RAW", "token").await();
+        client.hasAccess("other", "READ", "/a", "OPEN", "RAW", "token").await();
+
+        assertThat(client.flush("user")).isEqualTo(2);
+
+        client.hasAccess("user", "READ", "/a", "OPEN", "RAW", "token").await();
+        client.hasAccess("other", "READ", "/a", "OPEN", "RAW", "token").await();
+        assertThat(calls.get()).isEqualTo(4);
+    }
+
+    @Test
+    void thatDecisionInFlightDuringFlushIsNotCached() {
+        CompletableFuture<Boolean> pending = new CompletableFuture<>();
+        UserAccessClient slowAuth = (userId, privilege, path, valuation, state, jwtToken) -> {
+            calls.incrementAndGet();
+            return calls.get() == 1 ? Single.create(pending, true) : Single.just(false);
+        };
+        CachingUserAccessClient client = new CachingUserAccessClient(slowAuth, 100, 60_000, 60_000);
+        Single<Boolean> inFlight = client.hasAccess("user", "READ", "/a", "OPEN", "RAW", "token");
+
+        client.flush("user");
+        pending.complete(true);
+
+        assertThat(inFlight.await()).isTrue();
+        assertThat(client.hasAccess("user", "READ", "/a", "OPEN", "RAW", "token").await()).isFalse();
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void thatBulkDecisionsInFlightDuringFlushAreNotCached() {
+        CompletableFuture<List<Boolean>> pending = new CompletableFuture<>();
+        StubUserAccessClient stub = new StubUserAccessClient(check -> false) {
+            @Override
+            public Single<List<Boolean>> hasAccess(List<AccessCheckRequest> checks, String jwtToken) {
+                return bulkCalls.getAndIncrement() == 0 ? Single.create(pending, true) : super.hasAccess(checks, jwtToken);
+            }
+        };
+        CachingUserAccessClient client = new CachingUserAccessClient(stub, 100, 60_000, 60_000);
+        Single<List<Boolean>> inFlight = client.hasAccess(List.of(check("/a"), check("/b")), "token");
+
+        client.flush("user");
+        pending.complete(List.of(true, true));
+
+        assertThat(inFlight.await()).containsExactly(true, true);
+        assertThat(client.hasAccess(List.of(check("/a"), check("/b")), "token").await()).containsExactly(false, false);
+    }
+
+    @Test
+    void thatFlushOfAnotherUserKeepsDecisionsInFlight() {
+        CompletableFuture<Boolean> pending = new CompletableFuture<>();
+        UserAccessClient slowAuth = (userId, privilege, path, valuation, state, jwtToken) -> {
+            calls.incrementAndGet();
+            return Single.create(pending, true);
+        };
+        CachingUserAccessClient client = new CachingUserAccessClient(slowAuth, 100, 60_000, 60_000);
+        Single<Boolean> inFlight = client.hasAccess("user", "READ", "/a", "OPEN", "RAW", "token");
+
+        client.flush("other");
+        pending.complete(true);
+
+        assertThat(inFlight.await()).isTrue();
+        assertThat(client.hasAccess("user", "READ", "/a", "OPEN", "RAW", "token").await()).isTrue();
+        assertThat(calls.get()).isEqualTo(1);
+    }
+
+    @Test
+    void thatBulkChecksPassOnlyMissesToTheDelegate() {
+        StubUserAccessClient stub = new StubUserAccessClient(check -> !check.getPath().startsWith("/denied"));
+        CachingUserAccessClient client = new CachingUserAccessClient(stub, 100, 60_000, 60_000);
+        client.hasAccess("user", "READ", "/a", "OPEN", "RAW", "token").await();
+
+        List<Boolean> decisions = client.hasAccess(List.of(check("/a"), check("/denied"), check("/b")), "token").await();
+
+        assertThat(decisions).containsExactly(true, false, true);
+        assertThat(stub.bulkCalls.get()).isEqualTo(1);
+        assertThat(stub.bulkChecks.get()).isEqualTo(2);
+        assertThat(client.hasAccess(List.of(check("/denied"), check("/b")), "token").await()).containsExactly(false, true);
+        assertThat(stub.bulkCalls.get()).isEqualTo(1);
+    }
+
+    static AccessCheckRequest check(String path) {
+        return AccessCheckRequest.newBuilder()
+                .setUserId("user")
+                .setPrivilege("READ")
+                .setPath(path)
+                .setValuation("OPEN")
+                .setState("RAW")
+                .build();
+    }
+}
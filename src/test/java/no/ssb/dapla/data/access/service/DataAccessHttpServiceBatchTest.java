@@ -0,0 +1,235 @@
+package no.ssb.dapla.data.access.service;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.helidon.common.reactive.Single;
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import io.opentracing.Span;
+import io.opentracing.util.GlobalTracer;
+import no.ssb.dapla.auth.dataset.protobuf.AccessCheckRequest;
+import no.ssb.dapla.catalog.protobuf.Dataset;
+import no.ssb.dapla.catalog.protobuf.DatasetId;
+import no.ssb.dapla.catalog.protobuf.GetDatasetResponse;
+import no.ssb.dapla.data.access.metadata.MetadataSigner;
+import no.ssb.dapla.data.access.protobuf.ReadLocationRequest;
+import no.ssb.dapla.dataset.api.DatasetMeta;
+import no.ssb.dapla.dataset.api.DatasetState;
+import no.ssb.dapla.dataset.api.Valuation;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DataAccessHttpServiceBatchTest {
+
+    final AtomicInteger catalogCalls = new AtomicInteger();
+
+    final CatalogClient catalogClient = (request, jwtToken) -> {
+        catalogCalls.incrementAndGet();
+        if (request.getPath().startsWith("/missing")) {
+            return Single.just(GetDatasetResponse.newBuilder().build());
+        }
+        return Single.just(GetDatasetResponse.newBuilder()
+                .setDataset(Dataset.newBuilder()
+                        .setId(DatasetId.newBuilder().setPath(request.getPath()).setTimestamp(42))
+                        .setValuation(Dataset.Valuation.OPEN)
+                        .setState(Dataset.DatasetState.OUTPUT)
+                        .setParentUri("gs://dev-datalager-store"))
+                .build());
+    };
+
+    final StubUserAccessClient userAccessClient = new StubUserAccessClient(check -> !check.getPath().startsWith("/denied"));
+
+    final MetadataSigner metadataSigner = new MetadataSigner("PKCS12", "src/test/resources/metadata-signer_keystore.p12",
+            "dataAccessKeyPair", "changeit".toCharArray(), "SHA256withRSA");
+
+    final DataAccessHttpService service = new DataAccessHttpService(
+            new MockDataAccessService(Config.builder().sources(ConfigSources.file("src/test/resources/routing.json")).build()),
+            userAccessClient,
+            catalogClient,
+            metadataSigner,
+            Runnable::run);
+
+    final Span span = GlobalTracer.get().buildSpan("test").start();
+
+    @Test
+    void thatReadLocationsResolvesEveryItem() throws Exception {
+        List<ReadLocationRequest> items = DataAccessHttpService.parseItems("{\"items\":[" +
+                "{\"path\":\"/path/to/dataset\",\"snapshot\":\"42\"}," +
+                "{\"path\":\"/path/to/dataset\",\"snapshot\":\"42\"}," +
+                "{\"path\":\"/denied/dataset\"}," +
+                "{\"path\":\"/missing/dataset\"}]}", ReadLocationRequest.class);
+
+        List<ObjectNode> results = service.resolveReadLocations(span, "user", "token", items).join();
+
+        assertThat(results.get(0).get("status").asText()).isEqualTo("ALLOWED");
+        assertThat(results.get(0).get("version").asText()).isEqualTo("42");
+        assertThat(results.get(0).get("accessToken").asText()).isEqualTo("dev-read.json-read-token");
+        assertThat(results.get(1)).isEqualTo(results.get(0));
+        assertThat(results.get(2).get("status").asText()).isEqualTo("DENIED");
+        assertThat(results.get(2).get("accessAllowed").asBoolean()).isFalse();
+        assertThat(results.get(3).get("status").asText()).isEqualTo("NOT_FOUND");
+        assertThat(catalogCalls.get()).isEqualTo(3);
+        assertThat(userAccessClient.singleCalls.get()).isZero();
+        assertThat(userAccessClient.bulkCalls.get()).isEqualTo(1);
+        assertThat(userAccessClient.bulkChecks.get()).isEqualTo(2);
+    }
+
+    @Test
+    void thatFailedLookupFailsOnlyItsItem() throws Exception {
+        CatalogClient failingCatalog = (request, jwtToken) -> request.getPath().startsWith("/broken")
+                ? Single.error(new RuntimeException("catalog is down"))
+                : catalogClient.get(request, jwtToken);
+        DataAccessHttpService service = new DataAccessHttpService(
+                new MockDataAccessService(Config.builder().sources(ConfigSources.file("src/test/resources/routing.json")).build()),
+                userAccessClient, failingCatalog, metadataSigner, Runnable::run);
+        List<ReadLocationRequest> items = DataAccessHttpService.parseItems("{\"items\":[" +
+                "{\"path\":\"/broken/dataset\"}," +
+                "{\"path\":\"/path/to/dataset\"}]}", ReadLocationRequest.class);
+
+        List<ObjectNode> results = service.resolveReadLocations(span, "user", "token", items).join();
+
+        assertThat(results).extracting(result -> result.get("status").asText()).containsExactly("FAILED", "ALLOWED");
+    }
+
+    @Test
+    void thatThrowingBulkCheckFailsTheCheckedItems() throws Exception {
+        StubUserAccessClient throwingClient = new StubUserAccessClient(check -> true) {
+            @Override
+            public Single<List<Boolean>> hasAccess(List<AccessCheckRequest> checks, String jwtToken) {
+                throw new IllegalStateException("auth service client is closed");
+            }
+        };
+        DataAccessHttpService service = new DataAccessHttpService(
+                new MockDataAccessService(Config.builder().sources(ConfigSources.file("src/test/resources/routing.json")).build()),
+                throwingClient, catalogClient, metadataSigner, Runnable::run);
+        List<ReadLocationRequest> readItems = DataAccessHttpService.parseItems("{\"items\":[" +
+                "{\"path\":\"/path/to/dataset\"}," +
+                "{\"path\":\"/missing/dataset\"}]}", ReadLocationRequest.class);
+
+        List<ObjectNode> readResults = service.resolveReadLocations(span, "user", "token", readItems).join();
+        List<ObjectNode> writeResults = service.resolveWriteLocations(span, "user", "token", writeItems("/junit/a", "/junit/b")).join();
+
+        assertThat(readResults).extracting(result -> result.get("status").asText()).containsExactly("FAILED", "NOT_FOUND");
+        assertThat(writeResults).extracting(result -> result.get("status").asText()).containsExactly("FAILED", "FAILED");
+    }
+
+    @Test
+    void thatWriteLocationsChecksAccessInBulk() {
+        List<DatasetMeta> items = Stream.of("/junit/a", "/junit/b", "/denied/c", "/junit/d")
+                .map(path -> DatasetMeta.newBuilder()
+                        .setId(no.ssb.dapla.dataset.api.DatasetId.newBuilder().setPath(path).setVersion("1"))
+                        .setValuation(Valuation.INTERNAL)
+                        .setState(DatasetState.INPUT)
+                        .build())
+                .collect(Collectors.toList());
+
+        List<ObjectNode> results = service.resolveWriteLocations(span, "user", "token", items).join();
+
+        assertThat(results).extracting(result -> result.get("status").asText())
+                .containsExactly("ALLOWED", "ALLOWED", "DENIED", "ALLOWED");
+        assertThat(userAccessClient.singleCalls.get()).isZero();
+        assertThat(userAccessClient.bulkCalls.get()).isEqualTo(1);
+        ObjectNode allowed = results.get(0);
+        assertThat(allowed.get("accessToken").asText()).isEqualTo("dev-datalager-store-write-token");
+        byte[] metadataJson = Base64.getDecoder().decode(allowed.get("validMetadataJson").asText());
+        byte[] signature = Base64.getDecoder().decode(allowed.get("metadataSignature").asText());
+        assertThat(metadataSigner.verify(metadataJson, signature)).isTrue();
+        assertThat(new String(metadataJson, StandardCharsets.UTF_8)).contains("\"createdBy\": \"user\"");
+    }
+
+    @Test
+    void thatWriteTokensAreSharedPerWriteKeyFile() {
+        AtomicInteger tokenCalls = new AtomicInteger();
+        DataAccessHttpService service = serviceWithRoutes(tokenCalls,
+                route("/a/", "gs", "bucket-a", "shared-write.json"),
+                route("/b/", "gs", "bucket-b", "shared-write.json"),
+                route("/c/", "gs", "bucket-c", "other-write.json"));
+
+        List<ObjectNode> results = service.resolveWriteLocations(span, "user", "token",
+                writeItems("/a/one", "/b/two", "/a/three", "/c/four")).join();
+
+        assertThat(results).extracting(result -> result.get("accessToken").asText())
+                .containsExactly("shared-write.json-token", "shared-write.json-token", "shared-write.json-token", "other-write.json-token");
+        assertThat(results).extracting(result -> result.get("parentUri").asText())
+                .containsExactly("gs://bucket-a/data", "gs://bucket-b/data", "gs://bucket-a/data", "gs://bucket-c/data");
+        assertThat(tokenCalls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void thatWriteTokensWithoutKeyFileAreNotShared() {
+        AtomicInteger tokenCalls = new AtomicInteger();
+        DataAccessHttpService service = serviceWithRoutes(tokenCalls,
+                route("/local/", "file", "", null),
+                route("/default/", "gs", "bucket-default", null));
+
+        List<ObjectNode> results = service.resolveWriteLocations(span, "user", "token",
+                writeItems("/local/one", "/default/two", "/local/three", "/default/four")).join();
+
+        assertThat(results).extracting(result -> result.get("status").asText())
+                .containsExactly("ALLOWED", "ALLOWED", "ALLOWED", "ALLOWED");
+        assertThat(results).extracting(result -> result.path("accessToken").asText())
+                .containsExactly("", "default-token", "", "default-token");
+        assertThat(tokenCalls.get()).isEqualTo(4);
+    }
+
+    /**
+     * A service whose write tokens are named after the route's write key file, and null for other schemes than gs.
+     */
+    DataAccessHttpService serviceWithRoutes(AtomicInteger tokenCalls, String... routes) {
+        String routing = "{\"routing\":[" + String.join(",", routes) + "]}";
+        MockDataAccessService dataAccessService = new MockDataAccessService(Config.builder()
+                .disableEnvironmentVariablesSource().disableSystemPropertiesSource()
+                .sources(ConfigSources.create(routing, "application/json"))
+                .build()) {
+            @Override
+            public CompletableFuture<AccessToken> getWriteAccessToken(Span span, String userId, String path, Valuation valuation, DatasetState state) {
+                tokenCalls.incrementAndGet();
+                Route route = getRoute(path, valuation, state);
+                if (!"gs".equals(route.getUri().getScheme())) {
+                    return CompletableFuture.completedFuture(null);
+                }
+                return CompletableFuture.completedFuture(new AccessToken(
+                        route.getAuth().getOrDefault("write", "default") + "-token",
+                        System.currentTimeMillis() + 1000 * 60 * 60,
+                        route.getUri().toString()));
+            }
+        };
+        return new DataAccessHttpService(dataAccessService, userAccessClient, catalogClient, metadataSigner, Runnable::run);
+    }
+
+    /**
+     * @param writeKeyFile the write key file of the route, or null for the default credentials
+     */
+    static String route(String prefix, String scheme, String host, String writeKeyFile) {
+        return "{\"source\":{\"paths\":{\"includes\":[\"" + prefix + "\"]}}," +
+                "\"target\":{\"uri\":{\"scheme\":\"" + scheme + "\",\"host\":\"" + host + "\",\"path-prefix\":\"/data\"}," +
+                "\"auth\":{\"read\":\"read.json\"" + (writeKeyFile == null ? "" : ",\"write\":\"" + writeKeyFile + "\"") + "}}}";
+    }
+
+    static List<DatasetMeta> writeItems(String... paths) {
+        return Stream.of(paths)
+                .map(path -> DatasetMeta.newBuilder()
+                        .setId(no.ssb.dapla.dataset.api.DatasetId.newBuilder().setPath(path).setVersion("1"))
+                        .setValuation(Valuation.INTERNAL)
+                        .setState(DatasetState.INPUT)
+                        .build())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void thatOversizedBatchIsRejected() {
+        String items = String.join(",", Collections.nCopies(DataAccessHttpService.LOCATIONS_MAX_ITEMS + 1, "{\"path\":\"/a\"}"));
+        assertThatThrownBy(() -> DataAccessHttpService.parseItems("{\"items\":[" + items + "]}", ReadLocationRequest.class))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,154 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.common.reactive.Single;
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import io.opentracing.Span;
+import io.opentracing.util.GlobalTracer;
+import no.ssb.dapla.auth.dataset.protobuf.AccessCheckRequest;
+import no.ssb.dapla.data.access.metadata.MetadataSigner;
+import no.ssb.dapla.data.access.protobuf.WriteLocationResponse;
+import no.ssb.dapla.dataset.api.DatasetId;
+import no.ssb.dapla.dataset.api.DatasetMeta;
+import no.ssb.dapla.dataset.api.DatasetState;
+import no.ssb.dapla.dataset.api.Valuation;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DataAccessHttpServicePipelineTest {
+
+    final AtomicInteger writeLocationCalls = new AtomicInteger();
+    final AtomicInteger writeTokenCalls = new AtomicInteger();
+
+    final DataAccessService dataAccessService = new MockDataAccessService(
+            Config.builder().sources(ConfigSources.file("src/test/resources/routing.json")).build()) {
+        @Override
+        public CompletableFuture<URI> getWriteLocation(Span span, String userId, String path, Valuation valuation, DatasetState state) {
+            writeLocationCalls.incrementAndGet();
+            return super.getWriteLocation(span, userId, path, valuation, state);
+        }
+
+        @Override
+        public CompletableFuture<AccessToken> getWriteAccessToken(Span span, String userId, String path, Valuation valuation, DatasetState state) {
+            writeTokenCalls.incrementAndGet();
+            return super.getWriteAccessToken(span, userId, path, valuation, state);
+        }
+    };
+
+    final MetadataSigner metadataSigner = new MetadataSigner("PKCS12", "src/test/resources/metadata-signer_keystore.p12",
+            "dataAccessKeyPair", "changeit".toCharArray(), "SHA256withRSA");
+
+    final Span span = GlobalTracer.get().buildSpan("test").start();
+
+    final DatasetMeta metadata = DatasetMeta.newBuilder()
+            .setId(DatasetId.newBuilder().setPath("/junit/a").setVersion("1"))
+            .setValuation(Valuation.INTERNAL)
+            .setState(DatasetState.INPUT)
+            .build();
+
+    DataAccessHttpService service(UserAccessClient userAccessClient, String pipeline) {
+        return new DataAccessHttpService(dataAccessService, userAccessClient, (request, jwtToken) -> Single.never(),
+                metadataSigner, Runnable::run, null, Config.create(ConfigSources.create(Map.of(pipeline, "true"))));
+    }
+
+    @Test
+    void thatSpeculativeWriteStartsRouteAndTokenBeforeAccessIsDecided() {
+        CompletableFuture<Boolean> decision = new CompletableFuture<>();
+        DataAccessHttpService service = service((userId, privilege, path, valuation, state, jwtToken) ->
+                Single.create(decision, true), "speculative-write");
+
+        CompletableFuture<WriteLocationResponse> response = service.speculativeWriteLocation(span, "user", "token", metadata);
+        assertThat(writeLocationCalls.get()).isEqualTo(1);
+        assertThat(writeTokenCalls.get()).isEqualTo(1);
+        assertThat(response).isNotDone();
+
+        decision.complete(true);
+        assertThat(response.join().getAccessAllowed()).isTrue();
+        assertThat(response.join().getAccessToken()).isEqualTo("dev-datalager-store-write-token");
+        assertThat(metadataSigner.verify(response.join().getValidMetadataJson().toByteArray(),
+                response.join().getMetadataSignature().toByteArray())).isTrue();
+    }
+
+    @Test
+    void thatSpeculativeWriteDiscardsTokenWhenDenied() {
+        DataAccessHttpService service = service((userId, privilege, path, valuation, state, jwtToken) ->
+                Single.just(false), "speculative-write");
+
+        WriteLocationResponse response = service.speculativeWriteLocation(span, "user", "token", metadata).join();
+
+        assertThat(writeTokenCalls.get()).isEqualTo(1);
+        assertThat(response.getAccessAllowed()).isFalse();
+        assertThat(response.getAccessToken()).isEmpty();
+        assertThat(response.getValidMetadataJson().isEmpty()).isTrue();
+        assertThat(response.getParentUri()).isEmpty();
+    }
+
+    @Test
+    void thatSpeculativeWriteToUnroutablePathIsDeniedWhenAccessIsDenied() {
+        DataAccessService junitOnly = new MockDataAccessService(Config.builder()
+                .disableEnvironmentVariablesSource().disableSystemPropertiesSource()
+                .sources(ConfigSources.create("{\"routing\":[{\"source\":{\"paths\":{\"includes\":[\"/junit/\"]}}," +
+                        "\"target\":{\"uri\":{\"scheme\":\"gs\",\"host\":\"bucket\"}}}]}", "application/json"))
+                .build());
+        DatasetMeta unroutable = DatasetMeta.newBuilder(metadata)
+                .setId(DatasetId.newBuilder().setPath("/unroutable/a").setVersion("1"))
+                .build();
+
+        DataAccessHttpService denying = new DataAccessHttpService(junitOnly,
+                (userId, privilege, path, valuation, state, jwtToken) -> Single.just(false),
+                (request, jwtToken) -> Single.never(), metadataSigner, Runnable::run, null,
+                Config.create(ConfigSources.create(Map.of("speculative-write", "true"))));
+        assertThat(denying.speculativeWriteLocation(span, "user", "token", unroutable).join().getAccessAllowed()).isFalse();
+
+        DataAccessHttpService allowing = new DataAccessHttpService(junitOnly,
+                (userId, privilege, path, valuation, state, jwtToken) -> Single.just(true),
+                (request, jwtToken) -> Single.never(), metadataSigner, Runnable::run, null,
+                Config.create(ConfigSources.create(Map.of("speculative-write", "true"))));
+        assertThatThrownBy(() -> allowing.speculativeWriteLocation(span, "user", "token", unroutable).join())
+                .hasCauseInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void thatOverlappedReadUsesSpeculativeDecisionOnlyWhenInputsMatch() {
+        AtomicInteger accessChecks = new AtomicInteger();
+        DataAccessHttpService service = service((userId, privilege, path, valuation, state, jwtToken) -> {
+            accessChecks.incrementAndGet();
+            return Single.just("OPEN".equals(valuation));
+        }, "overlapped-read");
+
+        assertThat(service.startReadSpeculation("user", "/a", "token")).isNull();
+        assertThat(service.confirmReadSpeculation(null, readCheck("OPEN"), "token").await().getAllowed()).isTrue();
+        assertThat(accessChecks.get()).isEqualTo(1);
+
+        DataAccessHttpService.ReadSpeculation speculation = service.startReadSpeculation("user", "/a", "token");
+        assertThat(speculation).isNotNull();
+        assertThat(accessChecks.get()).isEqualTo(2);
+        assertThat(service.confirmReadSpeculation(speculation, readCheck("OPEN"), "token").await().getAllowed()).isTrue();
+        assertThat(accessChecks.get()).isEqualTo(2);
+
+        speculation = service.startReadSpeculation("user", "/a", "token");
+        assertThat(service.confirmReadSpeculation(speculation, readCheck("SENSITIVE"), "token").await().getAllowed()).isFalse();
+        assertThat(accessChecks.get()).isEqualTo(4);
+
+        speculation = service.startReadSpeculation("user", "/a", "token");
+        assertThat(speculation.valuation).isEqualTo("SENSITIVE");
+    }
+
+    static AccessCheckRequest readCheck(String valuation) {
+        return AccessCheckRequest.newBuilder()
+                .setUserId("user")
+                .setPrivilege("READ")
+                .setPath("/a")
+                .setValuation(valuation)
+                .setState("OUTPUT")
+                .build();
+    }
+}
@@ -0,0 +1,116 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.common.http.MediaType;
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import io.helidon.metrics.RegistryFactory;
+import io.helidon.webclient.WebClient;
+import io.helidon.webserver.Routing;
+import io.helidon.webserver.ServerConfiguration;
+import io.helidon.webserver.WebServer;
+import no.ssb.dapla.data.access.metadata.MetadataSigner;
+import no.ssb.dapla.data.access.protobuf.WriteLocationRequest;
+import no.ssb.dapla.data.access.protobuf.WriteLocationResponse;
+import no.ssb.dapla.dataset.api.DatasetId;
+import no.ssb.dapla.dataset.api.DatasetMeta;
+import no.ssb.dapla.dataset.api.DatasetState;
+import no.ssb.dapla.dataset.api.Valuation;
+import no.ssb.helidon.media.protobuf.ProtobufJsonSupport;
+import no.ssb.helidon.media.protobuf.ProtobufJsonUtils;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DataAccessHttpServiceSigningTest {
+
+    final MetricRegistry appRegistry = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+
+    final MetadataSigner metadataSigner = new MetadataSigner("PKCS12", "src/test/resources/metadata-signer_keystore.p12",
+            "dataAccessKeyPair", "changeit".toCharArray(), "SHA256withRSA");
+
+    static final DatasetMeta METADATA = DatasetMeta.newBuilder()
+            .setId(DatasetId.newBuilder().setPath("/junit/signing").setVersion("1"))
+            .setValuation(Valuation.INTERNAL)
+            .setState(DatasetState.INPUT)
+            .build();
+
+    DataAccessHttpService service(Executor signingExecutor) {
+        return new DataAccessHttpService(
+                new MockDataAccessService(Config.builder().sources(ConfigSources.file("src/test/resources/routing.json")).build()),
+                new StubUserAccessClient(check -> true),
+                (request, jwtToken) -> {
+                    throw new UnsupportedOperationException();
+                },
+                metadataSigner,
+                signingExecutor);
+    }
+
+    @Test
+    void thatBothSignaturesAreComputedInParallelOffTheCallerThread() throws Exception {
+        List<Runnable> queued = new CopyOnWriteArrayList<>();
+        DataAccessHttpService service = service(queued::add);
+        long signed = appRegistry.timer("metadataSignTimer").getCount();
+
+        CompletableFuture<WriteLocationResponse> response = service.signWriteLocation("user", METADATA,
+                URI.create("gs://bucket"), CompletableFuture.completedFuture(null));
+
+        // nothing has been signed on the calling thread, and neither signature waits for the other
+        assertThat(response).isNotDone();
+        assertThat(queued).hasSize(2);
+        assertThat(appRegistry.timer("metadataSignTimer").getCount()).isEqualTo(signed);
+
+        Thread signer = new Thread(() -> queued.forEach(Runnable::run));
+        signer.start();
+        signer.join(10_000);
+
+        WriteLocationResponse signedResponse = response.get(10, TimeUnit.SECONDS);
+        assertThat(metadataSigner.verify(signedResponse.getValidMetadataJson().toByteArray(),
+                signedResponse.getMetadataSignature().toByteArray())).isTrue();
+        assertThat(metadataSigner.verify(signedResponse.getAllValidMetadataJson().toByteArray(),
+                signedResponse.getAllMetadataSignature().toByteArray())).isTrue();
+        assertThat(appRegistry.timer("metadataSignTimer").getCount() - signed).isEqualTo(2);
+    }
+
+    @Test
+    void thatRejectedSigningFailsTheWriteWith500() {
+        DataAccessHttpService service = service(task -> {
+            throw new RejectedExecutionException("signing executor is full");
+        });
+        WebServer webServer = WebServer.builder(Routing.builder().register(service).build())
+                .config(ServerConfiguration.builder().port(0).build())
+                .addMediaSupport(ProtobufJsonSupport.create())
+                .build()
+                .start()
+                .await(10, TimeUnit.SECONDS);
+        try {
+            long failed = appRegistry.counter("writeRequestFailedCount").getCount();
+            WebClient webClient = WebClient.builder()
+                    .baseUri("http://localhost:" + webServer.port())
+                    .build();
+
+            int status = webClient.post()
+                    .path("/rpc/DataAccessService/writeLocation")
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .submit(ProtobufJsonUtils.toString(WriteLocationRequest.newBuilder()
+                            .setMetadataJson(ProtobufJsonUtils.toString(METADATA))
+                            .build()))
+                    .await(30, TimeUnit.SECONDS)
+                    .status()
+                    .code();
+
+            assertThat(status).isEqualTo(500);
+            assertThat(appRegistry.counter("writeRequestFailedCount").getCount() - failed).isEqualTo(1);
+        } finally {
+            webServer.shutdown().await(10, TimeUnit.SECONDS);
+        }
+    }
+}
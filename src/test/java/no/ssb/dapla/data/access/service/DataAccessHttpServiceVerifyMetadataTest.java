@@ -0,0 +1,121 @@
+package no.ssb.dapla.data.access.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.helidon.common.http.MediaType;
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import io.helidon.webclient.WebClient;
+import io.helidon.webclient.WebClientResponse;
+import io.helidon.webserver.Routing;
+import io.helidon.webserver.ServerConfiguration;
+import io.helidon.webserver.WebServer;
+import no.ssb.dapla.data.access.metadata.MetadataSigner;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Posts to {@code /rpc/DataAccessService/verifyMetadata} over HTTP.
+ */
+public class DataAccessHttpServiceVerifyMetadataTest {
+
+    static final ObjectMapper MAPPER = new ObjectMapper();
+
+    final MetadataSigner metadataSigner = new MetadataSigner("PKCS12", "src/test/resources/metadata-signer_keystore.p12",
+            "dataAccessKeyPair", "changeit".toCharArray(), "SHA256withRSA");
+
+    ExecutorService signingExecutor;
+    WebServer webServer;
+    WebClient webClient;
+
+    @BeforeEach
+    void startServer() {
+        signingExecutor = Executors.newFixedThreadPool(2);
+        DataAccessHttpService service = new DataAccessHttpService(
+                new MockDataAccessService(Config.builder().sources(ConfigSources.file("src/test/resources/routing.json")).build()),
+                new StubUserAccessClient(check -> true),
+                (request, jwtToken) -> {
+                    throw new UnsupportedOperationException();
+                },
+                metadataSigner,
+                signingExecutor);
+        webServer = WebServer.create(ServerConfiguration.builder().port(0).build(), Routing.builder().register(service).build())
+                .start()
+                .await(10, TimeUnit.SECONDS);
+        webClient = WebClient.builder()
+                .baseUri("http://localhost:" + webServer.port())
+                .build();
+    }
+
+    @AfterEach
+    void stopServer() {
+        webServer.shutdown().await(10, TimeUnit.SECONDS);
+        signingExecutor.shutdownNow();
+    }
+
+    WebClientResponse post(String body) {
+        return webClient.post()
+                .path("/rpc/DataAccessService/verifyMetadata")
+                .contentType(MediaType.APPLICATION_JSON)
+                .submit(body)
+                .await(30, TimeUnit.SECONDS);
+    }
+
+    static ObjectNode item(byte[] data, byte[] signature) {
+        ObjectNode item = MAPPER.createObjectNode();
+        item.put("metadataJson", Base64.getEncoder().encodeToString(data));
+        item.put("signature", Base64.getEncoder().encodeToString(signature));
+        return item;
+    }
+
+    @Test
+    void thatResultsAreReturnedInItemOrder() throws IOException {
+        ObjectNode request = MAPPER.createObjectNode();
+        ArrayNode items = request.putArray("items");
+        for (int i = 0; i < 300; i++) {
+            byte[] data = ("{\"path\":\"/dataset-" + i + "\"}").getBytes(StandardCharsets.UTF_8);
+            byte[] signature = metadataSigner.sign(data);
+            items.add(i % 3 == 2 ? item("{}".getBytes(StandardCharsets.UTF_8), signature) : item(data, signature));
+        }
+
+        WebClientResponse response = post(request.toString());
+
+        assertThat(response.status().code()).isEqualTo(200);
+        JsonNode results = MAPPER.readTree(response.content().as(String.class).await(10, TimeUnit.SECONDS)).path("results");
+        assertThat(results.size()).isEqualTo(300);
+        for (int i = 0; i < results.size(); i++) {
+            assertThat(results.get(i).path("valid").asBoolean()).as("item %d", i).isEqualTo(i % 3 != 2);
+        }
+    }
+
+    @Test
+    void thatBadBodyIsRejected() {
+        assertThat(post("not json").status().code()).isEqualTo(400);
+        assertThat(post("{}").status().code()).isEqualTo(400);
+        assertThat(post("{\"items\": {}}").status().code()).isEqualTo(400);
+        assertThat(post("{\"items\": [{\"metadataJson\": \"not base64!\", \"signature\": \"AAAA\"}]}").status().code()).isEqualTo(400);
+    }
+
+    @Test
+    void thatTooManyItemsAreRejected() {
+        byte[] data = "{}".getBytes(StandardCharsets.UTF_8);
+        ObjectNode request = MAPPER.createObjectNode();
+        ArrayNode items = request.putArray("items");
+        for (int i = 0; i <= DataAccessHttpService.VERIFY_METADATA_MAX_ITEMS; i++) {
+            items.add(item(data, new byte[4]));
+        }
+        assertThat(post(request.toString()).status().code()).isEqualTo(400);
+    }
+}
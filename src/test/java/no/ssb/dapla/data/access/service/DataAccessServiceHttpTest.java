@@ -92,7 +92,7 @@ class DataAccessServiceHttpTest {
 
     @Test
     public void thatWriteLocationThenGetAccessTokenWorks() {
-        WriteLocationResponse writeLocationResponse = testClient.postAsJson("/rpc/DataAccessService/writeLocation", WriteLocationRequest.newBuilder()
+        var response = testClient.postAsJson("/rpc/DataAccessService/writeLocation", WriteLocationRequest.newBuilder()
                         .setMetadataJson(ProtobufJsonUtils.toString(DatasetMeta.newBuilder()
                                 .setId(DatasetId.newBuilder()
                                         .setPath("/junit/write-loc-and-access-test")
@@ -103,10 +103,12 @@ class DataAccessServiceHttpTest {
                                 .setState(DatasetState.INPUT)
                                 .build()))
                         .build(),
-                WriteLocationResponse.class, headers).body();
+                WriteLocationResponse.class, headers);
+        WriteLocationResponse writeLocationResponse = response.body();
 
         assertNotNull(writeLocationResponse);
         assertThat(writeLocationResponse.getAccessAllowed()).isTrue();
+        assertThat(response.response().headers().firstValue(DataAccessHttpService.METADATA_SIGNATURE_KEY_ID_HEADER)).hasValue("dataAccessKeyPair");
         assertThat(writeLocationResponse.getAccessToken()).isEqualTo("dev-datalager-store-write-token");
         assertThat(writeLocationResponse.getExpirationTime()).isGreaterThan(System.currentTimeMillis());
         DatasetMeta signedDatasetMeta = ProtobufJsonUtils.toPojo(writeLocationResponse.getValidMetadataJson().toStringUtf8(), DatasetMeta.class);
@@ -0,0 +1,28 @@
+package no.ssb.dapla.data.access.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class GoogleDataAccessServiceTest {
+
+    static final long REFRESH_AHEAD = TimeUnit.SECONDS.toMillis(600);
+
+    @Test
+    void thatTokenLifetimeWithinRefreshAheadIsRefused() {
+        assertThatThrownBy(() -> GoogleDataAccessService.checkTokenLifetime(600, REFRESH_AHEAD))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> GoogleDataAccessService.checkTokenLifetime(300, REFRESH_AHEAD))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void thatLongerOrDefaultTokenLifetimeIsAccepted() {
+        assertThatCode(() -> GoogleDataAccessService.checkTokenLifetime(601, REFRESH_AHEAD)).doesNotThrowAnyException();
+        assertThatCode(() -> GoogleDataAccessService.checkTokenLifetime(3600, REFRESH_AHEAD)).doesNotThrowAnyException();
+        assertThatCode(() -> GoogleDataAccessService.checkTokenLifetime(0, REFRESH_AHEAD)).doesNotThrowAnyException();
+    }
+}
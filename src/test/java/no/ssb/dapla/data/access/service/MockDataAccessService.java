@@ -16,6 +16,10 @@ public class MockDataAccessService extends AbstractDataAccessService {
         super(config);
     }
 
+    public MockDataAccessService(Config config, Config applicationConfig) {
+        this(config);
+    }
+
     @Override
     public CompletableFuture<AccessToken> getReadAccessToken(Span span, String userId, String parentUriString) {
         final URI parentUri = URI.create(parentUriString);
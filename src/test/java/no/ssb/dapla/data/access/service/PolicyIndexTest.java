@@ -0,0 +1,72 @@
+package no.ssb.dapla.data.access.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PolicyIndexTest {
+
+    static final String SNAPSHOT = "{\"version\": 1," +
+            "\"roles\": [" +
+            "{\"roleId\": \"reader\", \"privileges\": {\"includes\": [\"READ\"]}," +
+            " \"paths\": {\"includes\": [\"/skatt/\"], \"excludes\": [\"/skatt/hemmelig/\"]}," +
+            " \"maxValuation\": \"INTERNAL\", \"states\": {\"excludes\": [\"RAW\"]}}," +
+            "{\"roleId\": \"writer\", \"privileges\": {\"includes\": [\"CREATE\"]}, \"paths\": {\"includes\": [\"/skatt/\"]}}," +
+            "{\"roleId\": \"admin\"}]," +
+            "\"groups\": [{\"groupId\": \"team\", \"roles\": [\"reader\", \"writer\"]}]," +
+            "\"users\": [" +
+            "{\"userId\": \"member\", \"groups\": [\"team\"]}," +
+            "{\"userId\": \"reader\", \"roles\": [\"reader\"]}," +
+            "{\"userId\": \"root\", \"roles\": [\"admin\"]}]}";
+
+    static PolicySnapshot snapshot(String json) throws IOException {
+        return PolicySnapshot.parse(new ObjectMapper().readTree(json));
+    }
+
+    @Test
+    void thatRolesAreEvaluatedPerPathValuationAndState() throws IOException {
+        PolicyIndex index = new PolicyIndex(snapshot(SNAPSHOT));
+
+        assertThat(index.hasAccess("reader", "READ", "/skatt/person", "INTERNAL", "INPUT")).isTrue();
+        assertThat(index.hasAccess("reader", "READ", "/skatt/person", "OPEN", "OUTPUT")).isTrue();
+        assertThat(index.hasAccess("reader", "READ", "/skatt/person", "SENSITIVE", "INPUT")).isFalse();
+        assertThat(index.hasAccess("reader", "READ", "/skatt/person", "INTERNAL", "RAW")).isFalse();
+        assertThat(index.hasAccess("reader", "READ", "/skatt/hemmelig/person", "OPEN", "INPUT")).isFalse();
+        assertThat(index.hasAccess("reader", "READ", "/other/person", "OPEN", "INPUT")).isFalse();
+        assertThat(index.hasAccess("reader", "CREATE", "/skatt/person", "OPEN", "INPUT")).isFalse();
+
+        assertThat(index.hasAccess("member", "CREATE", "/skatt/person", "SENSITIVE", "RAW")).isTrue();
+        assertThat(index.hasAccess("member", "READ", "/skatt/person", "OPEN", "INPUT")).isTrue();
+        assertThat(index.hasAccess("root", "DELETE", "/any", "SENSITIVE", "RAW")).isTrue();
+        assertThat(index.hasAccess("stranger", "READ", "/skatt/person", "OPEN", "INPUT")).isNull();
+    }
+
+    @Test
+    void thatUnknownCriteriaAreUndecided() throws IOException {
+        PolicyIndex index = new PolicyIndex(snapshot(SNAPSHOT));
+        assertThat(index.hasAccess("root", "READ", "/any", "TOP_SECRET", "RAW")).isNull();
+        assertThat(index.hasAccess("root", "EXECUTE", "/any", "OPEN", "RAW")).isNull();
+        assertThat(index.hasAccess("root", "READ", "/any", "OPEN", "ARCHIVED")).isNull();
+    }
+
+    @Test
+    void thatDeltaReplacesAndDeletesEntries() throws IOException {
+        PolicySnapshot snapshot = snapshot(SNAPSHOT);
+        PolicySnapshot updated = snapshot.apply(new ObjectMapper().readTree("{\"fromVersion\": 1, \"version\": 2," +
+                "\"users\": [{\"userId\": \"reader\", \"roles\": [\"writer\"]}]," +
+                "\"deleted\": {\"users\": [\"root\"]}}"));
+        PolicyIndex index = new PolicyIndex(updated);
+
+        assertThat(index.getVersion()).isEqualTo(2);
+        assertThat(index.hasAccess("reader", "READ", "/skatt/person", "OPEN", "INPUT")).isFalse();
+        assertThat(index.hasAccess("reader", "CREATE", "/skatt/person", "OPEN", "INPUT")).isTrue();
+        assertThat(index.hasAccess("root", "DELETE", "/any", "OPEN", "RAW")).isFalse();
+
+        assertThatThrownBy(() -> updated.apply(new ObjectMapper().readTree("{\"fromVersion\": 1, \"version\": 3}")))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
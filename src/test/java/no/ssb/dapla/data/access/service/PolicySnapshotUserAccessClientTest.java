@@ -0,0 +1,145 @@
+package no.ssb.dapla.data.access.service;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import no.ssb.dapla.auth.dataset.protobuf.AccessCheckRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PolicySnapshotUserAccessClientTest {
+
+    @TempDir
+    Path tempDir;
+
+    static final String READER_TOKEN = TokenVerifierTest.token("reader");
+
+    final StubUserAccessClient remote = new StubUserAccessClient(check -> true);
+
+    @Test
+    void thatChecksGoRemoteUntilThereIsASnapshot() {
+        PolicySnapshotUserAccessClient client = new PolicySnapshotUserAccessClient(remote, remote, TokenVerifierTest.VERIFIER, null, 0, null, 60_000, 0);
+        try {
+            assertThat(client.hasAccess("reader", "READ", "/other", "OPEN", "INPUT", READER_TOKEN).await()).isTrue();
+            assertThat(remote.singleCalls.get()).isEqualTo(1);
+
+            client.push(PolicyIndexTest.SNAPSHOT);
+            assertThat(client.hasAccess("reader", "READ", "/other", "OPEN", "INPUT", READER_TOKEN).await()).isFalse();
+            assertThat(client.hasAccess("reader", "READ", "/skatt/person", "OPEN", "INPUT", READER_TOKEN).await()).isTrue();
+            assertThat(client.hasAccess("reader", "READ", "/skatt/person", "TOP_SECRET", "INPUT", READER_TOKEN).await()).isTrue();
+            assertThat(remote.singleCalls.get()).isEqualTo(2);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    void thatStaleSnapshotIsNotUsed() {
+        PolicySnapshotUserAccessClient client = new PolicySnapshotUserAccessClient(remote, remote, TokenVerifierTest.VERIFIER, null, 0, null, -1, 0);
+        try {
+            client.push(PolicyIndexTest.SNAPSHOT);
+            assertThat(client.hasAccess("reader", "READ", "/other", "OPEN", "INPUT", READER_TOKEN).await()).isTrue();
+            assertThat(remote.singleCalls.get()).isEqualTo(1);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    void thatUnknownUserGoesRemote() {
+        PolicySnapshotUserAccessClient client = new PolicySnapshotUserAccessClient(remote, remote, TokenVerifierTest.VERIFIER, null, 0, null, 60_000, 0);
+        try {
+            client.push(PolicyIndexTest.SNAPSHOT);
+            assertThat(client.hasAccess("stranger", "READ", "/other", "OPEN", "INPUT", TokenVerifierTest.token("stranger")).await()).isTrue();
+            assertThat(remote.singleCalls.get()).isEqualTo(1);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    void thatUnverifiedTokenGoesRemote() {
+        PolicySnapshotUserAccessClient client = new PolicySnapshotUserAccessClient(remote, remote, TokenVerifierTest.VERIFIER, null, 0, null, 60_000, 0);
+        try {
+            client.push(PolicyIndexTest.SNAPSHOT);
+            String forged = JWT.create()
+                    .withIssuer(TokenVerifierTest.ISSUER)
+                    .withClaim("preferred_username", "reader")
+                    .withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+                    .sign(Algorithm.HMAC256("s3cr3t"));
+            assertThat(client.hasAccess("reader", "READ", "/other", "OPEN", "INPUT", forged).await()).isTrue();
+            // a verified token of another user does not decide checks for this one
+            assertThat(client.hasAccess("reader", "READ", "/other", "OPEN", "INPUT", TokenVerifierTest.token("root")).await()).isTrue();
+            assertThat(remote.singleCalls.get()).isEqualTo(2);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    void thatVerifierIsRequired() {
+        assertThatThrownBy(() -> new PolicySnapshotUserAccessClient(remote, remote, null, null, 0, null, 60_000, 0))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void thatBulkChecksSendOnlyUndecidedChecksRemote() {
+        PolicySnapshotUserAccessClient client = new PolicySnapshotUserAccessClient(remote, remote, TokenVerifierTest.VERIFIER, null, 0, null, 60_000, 0);
+        try {
+            client.push(PolicyIndexTest.SNAPSHOT);
+            List<Boolean> decisions = client.hasAccess(List.of(
+                    check("reader", "/other", "OPEN"), check("reader", "/skatt/person", "TOP_SECRET"),
+                    check("reader", "/skatt/person", "OPEN"), check("member", "/other", "OPEN")), READER_TOKEN).await();
+            assertThat(decisions).containsExactly(false, true, true, true);
+            assertThat(remote.bulkCalls.get()).isEqualTo(1);
+            assertThat(remote.bulkChecks.get()).isEqualTo(2);
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    void thatSampledChecksAreComparedWithConsistencyClient() {
+        StubUserAccessClient consistencyClient = new StubUserAccessClient(check -> false);
+        PolicySnapshotUserAccessClient client = new PolicySnapshotUserAccessClient(remote, consistencyClient, TokenVerifierTest.VERIFIER, null, 0, null, 60_000, 1);
+        try {
+            client.push(PolicyIndexTest.SNAPSHOT);
+            assertThat(client.hasAccess("reader", "READ", "/other", "OPEN", "INPUT", READER_TOKEN).await()).isFalse();
+            assertThat(consistencyClient.singleCalls.get()).isEqualTo(1);
+            assertThat(remote.singleCalls.get()).isZero();
+        } finally {
+            client.close();
+        }
+    }
+
+    @Test
+    void thatPushedFileIsLoaded() throws IOException {
+        Path file = tempDir.resolve("policy-snapshot.json");
+        Files.writeString(file, PolicyIndexTest.SNAPSHOT);
+        PolicySnapshotUserAccessClient client = new PolicySnapshotUserAccessClient(remote, remote, TokenVerifierTest.VERIFIER, null, 0, file, 60_000, 0);
+        try {
+            assertThat(client.hasAccess("reader", "READ", "/other", "OPEN", "INPUT", READER_TOKEN).await()).isFalse();
+            assertThat(remote.singleCalls.get()).isZero();
+        } finally {
+            client.close();
+        }
+    }
+
+    static AccessCheckRequest check(String userId, String path, String valuation) {
+        return AccessCheckRequest.newBuilder()
+                .setUserId(userId)
+                .setPrivilege("READ")
+                .setPath(path)
+                .setValuation(valuation)
+                .setState("INPUT")
+                .build();
+    }
+}
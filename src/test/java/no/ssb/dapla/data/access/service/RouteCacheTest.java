@@ -0,0 +1,75 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import io.helidon.metrics.RegistryFactory;
+import no.ssb.dapla.dataset.api.DatasetState;
+import no.ssb.dapla.dataset.api.Valuation;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RouteCacheTest {
+
+    private static final String ROUTING = "{\"routing\":[{\"source\":{\"paths\":{\"includes\":[\"%s\"]}}," +
+            "\"target\":{\"uri\":{\"scheme\":\"gs\",\"host\":\"%s\"},\"auth\":{\"read\":\"read.json\",\"write\":\"write.json\"}}}]}";
+
+    final MetricRegistry appRegistry = RegistryFactory.getInstance().getRegistry(MetricRegistry.Type.APPLICATION);
+
+    static Config routing(String prefix, String host) {
+        return Config.builder().disableEnvironmentVariablesSource().disableSystemPropertiesSource()
+                .sources(ConfigSources.create(String.format(ROUTING, prefix, host), "application/json"))
+                .build();
+    }
+
+    long count(String name) {
+        return appRegistry.counter(name).getCount();
+    }
+
+    @Test
+    void thatHitsAndMissesAreCounted() {
+        RouteCache routeCache = new RouteCache(RoutingTable.create(routing("/skatt/", "first")), 100);
+        long hits = count("routeCacheHitCount");
+        long misses = count("routeCacheMissCount");
+
+        Route route = routeCache.route("/skatt/person", Valuation.OPEN, DatasetState.RAW);
+        assertThat(route.getHost()).isEqualTo("first");
+        assertThat(routeCache.route("/skatt/person", Valuation.OPEN, DatasetState.RAW)).isSameAs(route);
+        assertThat(routeCache.route("/skatt/person", Valuation.OPEN, DatasetState.RAW)).isSameAs(route);
+        routeCache.route("/skatt/person", Valuation.SENSITIVE, DatasetState.RAW);
+        routeCache.route("/skatt/person", Valuation.OPEN, DatasetState.INPUT);
+
+        assertThat(count("routeCacheHitCount") - hits).isEqualTo(2);
+        assertThat(count("routeCacheMissCount") - misses).isEqualTo(3);
+    }
+
+    @Test
+    void thatMissingRoutesAreCached() {
+        RouteCache routeCache = new RouteCache(RoutingTable.create(routing("/skatt/", "first")), 100);
+        long hits = count("routeCacheHitCount");
+        long misses = count("routeCacheMissCount");
+
+        assertThat(routeCache.route("/other/person", Valuation.OPEN, DatasetState.RAW)).isNull();
+        assertThat(routeCache.route("/other/person", Valuation.OPEN, DatasetState.RAW)).isNull();
+
+        assertThat(count("routeCacheHitCount") - hits).isEqualTo(1);
+        assertThat(count("routeCacheMissCount") - misses).isEqualTo(1);
+    }
+
+    @Test
+    void thatCacheIsReplacedWithRoutingTable() {
+        AbstractDataAccessService service = new MockDataAccessService(routing("/skatt/", "first"));
+        assertThat(service.getRoute("/skatt/person", Valuation.OPEN, DatasetState.RAW).getHost()).isEqualTo("first");
+        assertThatThrownBy(() -> service.getRoute("/other/person", Valuation.OPEN, DatasetState.RAW))
+                .isInstanceOf(NoSuchElementException.class);
+
+        service.setRoutingTable(RoutingTable.create(routing("/", "second")));
+
+        assertThat(service.getRoute("/skatt/person", Valuation.OPEN, DatasetState.RAW).getHost()).isEqualTo("second");
+        assertThat(service.getRoute("/other/person", Valuation.OPEN, DatasetState.RAW).getHost()).isEqualTo("second");
+    }
+}
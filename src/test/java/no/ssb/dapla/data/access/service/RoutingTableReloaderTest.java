@@ -0,0 +1,60 @@
+package no.ssb.dapla.data.access.service;
+
+import no.ssb.dapla.dataset.api.DatasetState;
+import no.ssb.dapla.dataset.api.Valuation;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RoutingTableReloaderTest {
+
+    private static final String ROUTING = "{\"routing\":[{\"source\":{},\"target\":{\"uri\":{\"scheme\":\"gs\",\"host\":\"%s\"}}}]}";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void thatChangedRoutingFileIsSwappedIn() throws IOException {
+        Path routingFile = tempDir.resolve("routing.json");
+        Files.writeString(routingFile, String.format(ROUTING, "first"));
+        AtomicReference<RoutingTable> active = new AtomicReference<>(RoutingTableReloader.load(routingFile));
+        RoutingTableReloader reloader = new RoutingTableReloader(routingFile, active.get(), 0, active::set);
+        try {
+            Files.writeString(routingFile, String.format(ROUTING, "second"));
+            reloader.reload();
+            assertThat(active.get().route("/any", Valuation.OPEN, DatasetState.RAW).getHost()).isEqualTo("second");
+        } finally {
+            reloader.close();
+        }
+    }
+
+    @Test
+    void thatInvalidRoutingFileIsRejected() throws IOException {
+        Path routingFile = tempDir.resolve("routing.json");
+        Files.writeString(routingFile, String.format(ROUTING, "first"));
+        AtomicReference<RoutingTable> active = new AtomicReference<>(RoutingTableReloader.load(routingFile));
+        RoutingTable initial = active.get();
+        RoutingTableReloader reloader = new RoutingTableReloader(routingFile, initial, 0, active::set);
+        try {
+            Files.writeString(routingFile, "{\"routing\":[{\"source\":{},\"target\":{");
+            reloader.reload();
+            assertThat(active.get()).isSameAs(initial);
+
+            Files.writeString(routingFile, "{\"routing\":[]}");
+            reloader.reload();
+            assertThat(active.get()).isSameAs(initial);
+
+            Files.writeString(routingFile, "{\"routing\":[{\"source\":{},\"target\":{\"uri\":{\"scheme\":\"gs\"}}}]}");
+            reloader.reload();
+            assertThat(active.get()).isSameAs(initial);
+        } finally {
+            reloader.close();
+        }
+    }
+}
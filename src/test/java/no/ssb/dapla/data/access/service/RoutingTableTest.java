@@ -0,0 +1,175 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import no.ssb.dapla.dataset.api.DatasetState;
+import no.ssb.dapla.dataset.api.Valuation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the compiled routing table against the original matcher, which walks the routing config for every lookup,
+ * on large randomly generated tables.
+ */
+public class RoutingTableTest {
+
+    private static final String[] SEGMENTS = {"/raw", "/skatt", "/sirius", "/ske", "/tmp", "/junit", "/a", "/ab", "/b", "/"};
+    private static final Valuation[] VALUATIONS = {Valuation.SENSITIVE, Valuation.SHIELDED, Valuation.INTERNAL, Valuation.OPEN};
+    private static final DatasetState[] STATES = {DatasetState.RAW, DatasetState.INPUT, DatasetState.PROCESSED,
+            DatasetState.OUTPUT, DatasetState.PRODUCT, DatasetState.OTHER};
+
+    @Test
+    void thatCompiledTableMatchesOriginalMatcherOnRandomTables() {
+        for (long seed = 1; seed <= 20; seed++) {
+            Random random = new Random(seed);
+            Config config = randomRoutingConfig(random, 50 + random.nextInt(450));
+            RoutingTable routingTable = RoutingTable.create(config);
+            List<Config> routing = config.get("routing").asNodeList().get();
+
+            for (int i = 0; i < 2000; i++) {
+                String path = randomPath(random);
+                Valuation valuation = VALUATIONS[random.nextInt(VALUATIONS.length)];
+                DatasetState state = STATES[random.nextInt(STATES.length)];
+
+                int expected = -1;
+                for (int r = 0; r < routing.size(); r++) {
+                    if (matchRoutingEntry(path, valuation, state, routing.get(r).get("source"))) {
+                        expected = r;
+                        break;
+                    }
+                }
+                Route actual = routingTable.route(path, valuation, state);
+
+                String description = "seed " + seed + ", path " + path + ", " + valuation + ", " + state;
+                if (expected < 0) {
+                    assertThat(actual).as(description).isNull();
+                } else {
+                    assertThat(actual).as(description).isSameAs(routingTable.getRoutes().get(expected));
+                }
+            }
+        }
+    }
+
+    @Test
+    void thatEmptyPrefixMatchesEveryPath() {
+        RoutingTable routingTable = RoutingTable.create(Config.builder().disableEnvironmentVariablesSource()
+                .sources(ConfigSources.create("{\"routing\":[" +
+                        "{\"source\":{\"paths\":{\"includes\":[\"\"],\"excludes\":[\"/x\"]}},\"target\":{\"uri\":{\"scheme\":\"gs\",\"host\":\"first\"}}}," +
+                        "{\"source\":{},\"target\":{\"uri\":{\"scheme\":\"gs\",\"host\":\"second\"}}}" +
+                        "]}", "application/json"))
+                .build());
+        assertThat(routingTable.route("/anything", Valuation.OPEN, DatasetState.RAW).getHost()).isEqualTo("first");
+        assertThat(routingTable.route("/x/y", Valuation.OPEN, DatasetState.RAW).getHost()).isEqualTo("second");
+    }
+
+    @Test
+    void thatFirstRouteToSharedTargetDecidesReadAuth() {
+        RoutingTable routingTable = RoutingTable.create(Config.builder().disableEnvironmentVariablesSource()
+                .sources(ConfigSources.file("src/test/resources/routing/staging.json"))
+                .build());
+        assertThat(routingTable.route("gs", "ssb-data-staging").getUri().getPath()).isEqualTo("/datastore/sensitive");
+        assertThat(routingTable.route("gs", "staging-rawdata-store").getAuth().get("read"))
+                .isEqualTo("/gcloud/staging-bip-rawdata-store.json");
+        assertThat(routingTable.route("gs", "unknown")).isNull();
+        assertThat(routingTable.route("file", "ssb-data-staging")).isNull();
+    }
+
+    private static Config randomRoutingConfig(Random random, int rules) {
+        List<String> entries = new ArrayList<>();
+        for (int i = 0; i < rules; i++) {
+            List<String> source = new ArrayList<>();
+            if (random.nextInt(10) > 0) {
+                source.add("\"paths\":" + criterion(random, () -> randomPrefix(random)));
+            }
+            if (random.nextInt(3) == 0) {
+                source.add("\"valuations\":" + criterion(random, () -> randomCase(random,
+                        VALUATIONS[random.nextInt(VALUATIONS.length)].name())));
+            }
+            if (random.nextInt(3) == 0) {
+                source.add("\"states\":" + criterion(random, () -> randomCase(random,
+                        STATES[random.nextInt(STATES.length)].name())));
+            }
+            entries.add("{\"source\":{" + String.join(",", source) + "}," +
+                    "\"target\":{\"uri\":{\"scheme\":\"gs\",\"host\":\"bucket-" + i + "\",\"path-prefix\":\"/datastore\"}," +
+                    "\"auth\":{\"read\":\"read-" + i + ".json\",\"write\":\"write-" + i + ".json\"}}}");
+        }
+        String json = "{\"routing\":[" + String.join(",", entries) + "]}";
+        return Config.builder().disableEnvironmentVariablesSource()
+                .sources(ConfigSources.create(json, "application/json"))
+                .build();
+    }
+
+    private static String criterion(Random random, Supplier<String> values) {
+        List<String> parts = new ArrayList<>();
+        if (random.nextInt(4) > 0) {
+            parts.add("\"includes\":" + randomList(random, values));
+        }
+        if (random.nextInt(2) == 0) {
+            parts.add("\"excludes\":" + randomList(random, values));
+        }
+        return "{" + String.join(",", parts) + "}";
+    }
+
+    private static String randomList(Random random, Supplier<String> values) {
+        int size = 1 + random.nextInt(4);
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            list.add("\"" + values.get() + "\"");
+        }
+        return "[" + String.join(",", list) + "]";
+    }
+
+    private static String randomPrefix(Random random) {
+        String path = randomPath(random);
+        // cut at a random position to get prefixes that end mid-segment as well
+        return path.substring(0, random.nextInt(path.length() + 1));
+    }
+
+    private static String randomPath(Random random) {
+        StringBuilder path = new StringBuilder();
+        int segments = 1 + random.nextInt(4);
+        for (int i = 0; i < segments; i++) {
+            path.append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+        }
+        return path.toString();
+    }
+
+    private static String randomCase(Random random, String value) {
+        return random.nextBoolean() ? value : value.toLowerCase();
+    }
+
+    /*
+     * The original matcher of AbstractDataAccessService, evaluated against the config tree.
+     */
+
+    private static boolean matchRoutingEntry(String path, Valuation valuation, DatasetState state, Config source) {
+        if (source.get("paths").exists() && !match(source.get("paths"), path::startsWith)) {
+            return false;
+        }
+        if (source.get("valuations").exists() && !match(source.get("valuations"), valuation.name()::equalsIgnoreCase)) {
+            return false;
+        }
+        if (source.get("states").exists() && !match(source.get("states"), state.name()::equalsIgnoreCase)) {
+            return false;
+        }
+        return true; // all criteria matched
+    }
+
+    private static boolean match(Config criterionNode, Function<String, Boolean> matcher) {
+        if (criterionNode.get("excludes").asList(String.class).orElseGet(Collections::emptyList).stream().anyMatch(v -> matcher.apply(v))) {
+            return false;
+        }
+        if (!criterionNode.get("includes").exists() || criterionNode.get("includes").asList(String.class).get().stream().anyMatch(v -> matcher.apply(v))) {
+            return true;
+        }
+        return false; // non-empty include set, but no matches
+    }
+}
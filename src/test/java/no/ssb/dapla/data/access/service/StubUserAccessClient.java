@@ -0,0 +1,43 @@
+package no.ssb.dapla.data.access.service;
+
+import io.helidon.common.reactive.Single;
+import no.ssb.dapla.auth.dataset.protobuf.AccessCheckRequest;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Local access client for tests, answering single and bulk checks from a predicate and counting the calls.
+ */
+public class StubUserAccessClient implements UserAccessClient {
+
+    final Predicate<AccessCheckRequest> policy;
+    final AtomicInteger singleCalls = new AtomicInteger();
+    final AtomicInteger bulkCalls = new AtomicInteger();
+    final AtomicInteger bulkChecks = new AtomicInteger();
+
+    public StubUserAccessClient(Predicate<AccessCheckRequest> policy) {
+        this.policy = policy;
+    }
+
+    @Override
+    public Single<Boolean> hasAccess(String userId, String privilege, String path, String valuation, String state, String jwtToken) {
+        singleCalls.incrementAndGet();
+        return Single.just(policy.test(AccessCheckRequest.newBuilder()
+                .setUserId(userId)
+                .setPrivilege(privilege)
+                .setPath(path)
+                .setValuation(valuation)
+                .setState(state)
+                .build()));
+    }
+
+    @Override
+    public Single<List<Boolean>> hasAccess(List<AccessCheckRequest> checks, String jwtToken) {
+        bulkCalls.incrementAndGet();
+        bulkChecks.addAndGet(checks.size());
+        return Single.just(checks.stream().map(policy::test).collect(Collectors.toList()));
+    }
+}
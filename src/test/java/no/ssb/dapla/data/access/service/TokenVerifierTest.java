@@ -0,0 +1,198 @@
+package no.ssb.dapla.data.access.service;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import io.helidon.config.Config;
+import io.helidon.config.ConfigSources;
+import io.helidon.webserver.Routing;
+import io.helidon.webserver.ServerConfiguration;
+import io.helidon.webserver.WebServer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TokenVerifierTest {
+
+    static final String ISSUER = "https://issuer.test";
+    static final KeyPair ISSUER_KEYS = generateRsaKeyPair();
+    static final TokenVerifier VERIFIER = new TokenVerifier(ISSUER, Map.of("issuer-key", ISSUER_KEYS.getPublic()), null, 0);
+
+    static KeyPair generateRsaKeyPair() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+            generator.initialize(2048);
+            return generator.generateKeyPair();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return a token for the user, signed with the issuer key and valid for a minute
+     */
+    static String token(String userId) {
+        return JWT.create()
+                .withKeyId("issuer-key")
+                .withIssuer(ISSUER)
+                .withClaim("preferred_username", userId)
+                .withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+                .sign(Algorithm.RSA256(null, (RSAPrivateKey) ISSUER_KEYS.getPrivate()));
+    }
+
+    @Test
+    void thatIssuerSignedTokenIsVerified() {
+        assertThat(DataAccessHttpService.extractUserId(VERIFIER.verify(token("reader")))).isEqualTo("reader");
+    }
+
+    @Test
+    void thatTokenSignedWithAnotherKeyIsRejected() {
+        String token = JWT.create()
+                .withKeyId("issuer-key")
+                .withIssuer(ISSUER)
+                .withClaim("preferred_username", "reader")
+                .withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+                .sign(Algorithm.RSA256(null, (RSAPrivateKey) generateRsaKeyPair().getPrivate()));
+        assertThatThrownBy(() -> VERIFIER.verify(token)).isInstanceOf(JWTVerificationException.class);
+    }
+
+    @Test
+    void thatHmacAndUnsignedTokensAreRejected() {
+        String hmac = JWT.create()
+                .withIssuer(ISSUER)
+                .withClaim("preferred_username", "reader")
+                .withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+                .sign(Algorithm.HMAC256("s3cr3t"));
+        String none = JWT.create()
+                .withIssuer(ISSUER)
+                .withClaim("preferred_username", "reader")
+                .withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+                .sign(Algorithm.none());
+        assertThatThrownBy(() -> VERIFIER.verify(hmac)).isInstanceOf(JWTVerificationException.class);
+        assertThatThrownBy(() -> VERIFIER.verify(none)).isInstanceOf(JWTVerificationException.class);
+        assertThatThrownBy(() -> VERIFIER.verify("not a token")).isInstanceOf(JWTVerificationException.class);
+    }
+
+    @Test
+    void thatExpiredTokenWithoutExpiryOrFromOtherIssuerIsRejected() {
+        Algorithm algorithm = Algorithm.RSA256(null, (RSAPrivateKey) ISSUER_KEYS.getPrivate());
+        String expired = JWT.create()
+                .withKeyId("issuer-key")
+                .withIssuer(ISSUER)
+                .withClaim("preferred_username", "reader")
+                .withExpiresAt(new Date(System.currentTimeMillis() - 60_000))
+                .sign(algorithm);
+        String withoutExpiry = JWT.create()
+                .withKeyId("issuer-key")
+                .withIssuer(ISSUER)
+                .withClaim("preferred_username", "reader")
+                .sign(algorithm);
+        String otherIssuer = JWT.create()
+                .withKeyId("issuer-key")
+                .withIssuer("https://other.test")
+                .withClaim("preferred_username", "reader")
+                .withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+                .sign(algorithm);
+        assertThatThrownBy(() -> VERIFIER.verify(expired)).isInstanceOf(JWTVerificationException.class);
+        assertThatThrownBy(() -> VERIFIER.verify(withoutExpiry)).isInstanceOf(JWTVerificationException.class);
+        assertThatThrownBy(() -> VERIFIER.verify(otherIssuer)).isInstanceOf(JWTVerificationException.class);
+    }
+
+    @Test
+    void thatJwksKeysAreParsed() throws IOException {
+        RSAPublicKey key = (RSAPublicKey) ISSUER_KEYS.getPublic();
+        String jwks = "{\"keys\": [{\"kid\": \"issuer-key\", \"kty\": \"RSA\", \"use\": \"sig\"," +
+                " \"n\": \"" + base64Url(key.getModulus()) + "\", \"e\": \"" + base64Url(key.getPublicExponent()) + "\"}," +
+                "{\"kid\": \"symmetric\", \"kty\": \"oct\", \"k\": \"c2VjcmV0\"}]}";
+        Map<String, PublicKey> keys = TokenVerifier.parseJwks(jwks);
+        assertThat(keys).containsOnlyKeys("issuer-key");
+        assertThat(keys.get("issuer-key")).isEqualTo(key);
+    }
+
+    @Test
+    void thatUnknownKeyIdIsRejectedWhileJwksIsFetchedInBackground() throws InterruptedException {
+        RSAPublicKey key = (RSAPublicKey) ISSUER_KEYS.getPublic();
+        String rotatedJwks = "{\"keys\": [{\"kid\": \"rotated-key\", \"kty\": \"RSA\"," +
+                " \"n\": \"" + base64Url(key.getModulus()) + "\", \"e\": \"" + base64Url(key.getPublicExponent()) + "\"}]}";
+        AtomicInteger fetches = new AtomicInteger();
+        Routing routing = Routing.builder()
+                .get("/certs", (req, res) -> {
+                    if (fetches.incrementAndGet() == 1) {
+                        res.send("{\"keys\": []}");
+                        return;
+                    }
+                    // a slow endpoint, answering long after the token was rejected
+                    CompletableFuture.runAsync(() -> res.send(rotatedJwks), CompletableFuture.delayedExecutor(1, TimeUnit.SECONDS));
+                })
+                .build();
+        WebServer jwksServer = WebServer.create(ServerConfiguration.builder().port(0).build(), routing)
+                .start()
+                .await(10, TimeUnit.SECONDS);
+        try {
+            TokenVerifier verifier = new TokenVerifier(ISSUER, Map.of(),
+                    URI.create("http://localhost:" + jwksServer.port() + "/certs"), 0, 0);
+            String token = JWT.create()
+                    .withKeyId("rotated-key")
+                    .withIssuer(ISSUER)
+                    .withClaim("preferred_username", "reader")
+                    .withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+                    .sign(Algorithm.RSA256(null, (RSAPrivateKey) ISSUER_KEYS.getPrivate()));
+
+            long start = System.currentTimeMillis();
+            assertThatThrownBy(() -> verifier.verify(token)).isInstanceOf(JWTVerificationException.class);
+            assertThatThrownBy(() -> verifier.verify(token)).isInstanceOf(JWTVerificationException.class);
+            assertThat(System.currentTimeMillis() - start).isLessThan(500);
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (System.currentTimeMillis() < deadline) {
+                try {
+                    assertThat(DataAccessHttpService.extractUserId(verifier.verify(token))).isEqualTo("reader");
+                    break;
+                } catch (JWTVerificationException e) {
+                    Thread.sleep(50);
+                }
+            }
+            assertThat(DataAccessHttpService.extractUserId(verifier.verify(token))).isEqualTo("reader");
+            assertThat(fetches.get()).isGreaterThanOrEqualTo(2);
+        } finally {
+            jwksServer.shutdown().await(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void thatVerifierWithoutKeysIsRefused() {
+        Config config = Config.builder()
+                .disableEnvironmentVariablesSource()
+                .disableSystemPropertiesSource()
+                .sources(ConfigSources.create(Map.of("token-verification.issuer", ISSUER)))
+                .build()
+                .get("token-verification");
+        assertThatThrownBy(() -> TokenVerifier.create(config)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static String base64Url(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        if (bytes[0] == 0 && bytes.length > 1) {
+            bytes = Arrays.copyOfRange(bytes, 1, bytes.length);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
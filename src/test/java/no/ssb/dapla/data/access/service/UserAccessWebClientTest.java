@@ -0,0 +1,157 @@
+package no.ssb.dapla.data.access.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.helidon.common.http.MediaType;
+import io.helidon.webclient.WebClient;
+import io.helidon.webserver.Routing;
+import io.helidon.webserver.ServerConfiguration;
+import io.helidon.webserver.ServerRequest;
+import io.helidon.webserver.ServerResponse;
+import io.helidon.webserver.WebServer;
+import no.ssb.dapla.auth.dataset.protobuf.AccessCheckRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the client against a stub auth service that allows paths starting with {@code /allowed}.
+ */
+public class UserAccessWebClientTest {
+
+    static final ObjectMapper MAPPER = new ObjectMapper();
+
+    WebServer authService;
+    WebClient webClient;
+
+    volatile int bulkStatus = 200;
+    volatile int bulkResultsDropped = 0;
+    final AtomicInteger bulkRequests = new AtomicInteger();
+    final AtomicInteger singleRequests = new AtomicInteger();
+
+    @BeforeEach
+    void startAuthService() {
+        Routing routing = Routing.builder()
+                .get("/access/{userId}", this::singleCheck)
+                .post("/access", this::bulkCheck)
+                .build();
+        authService = WebServer.create(ServerConfiguration.builder().port(0).build(), routing)
+                .start()
+                .await(10, TimeUnit.SECONDS);
+        webClient = WebClient.builder()
+                .baseUri("http://localhost:" + authService.port())
+                .build();
+    }
+
+    @AfterEach
+    void stopAuthService() {
+        authService.shutdown().await(10, TimeUnit.SECONDS);
+    }
+
+    void singleCheck(ServerRequest req, ServerResponse res) {
+        singleRequests.incrementAndGet();
+        boolean allowed = req.queryParams().first("path").orElse("").startsWith("/allowed");
+        res.status(allowed ? 200 : 403).send();
+    }
+
+    void bulkCheck(ServerRequest req, ServerResponse res) {
+        bulkRequests.incrementAndGet();
+        if (bulkStatus != 200) {
+            res.status(bulkStatus).send();
+            return;
+        }
+        req.content().as(String.class).thenAccept(body -> {
+            JsonNode items;
+            try {
+                items = MAPPER.readTree(body).path("items");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            StringBuilder results = new StringBuilder();
+            for (int i = 0; i < items.size() - bulkResultsDropped; i++) {
+                boolean allowed = items.get(i).path("path").asText().startsWith("/allowed");
+                results.append(i == 0 ? "" : ",").append("{\"allowed\":").append(allowed).append("}");
+            }
+            res.headers().contentType(MediaType.APPLICATION_JSON);
+            res.send("{\"results\":[" + results + "]}");
+        });
+    }
+
+    static List<AccessCheckRequest> checks() {
+        return List.of(check("/allowed/a"), check("/denied/b"), check("/allowed/c"));
+    }
+
+    static AccessCheckRequest check(String path) {
+        return AccessCheckRequest.newBuilder()
+                .setUserId("user")
+                .setPrivilege("READ")
+                .setPath(path)
+                .setValuation("OPEN")
+                .setState("RAW")
+                .build();
+    }
+
+    @Test
+    void thatBulkCheckIsAnsweredInOrder() {
+        UserAccessWebClient client = new UserAccessWebClient(webClient);
+
+        assertThat(client.hasAccess(checks(), "token").await(10, TimeUnit.SECONDS)).containsExactly(true, false, true);
+        assertThat(bulkRequests.get()).isEqualTo(1);
+        assertThat(singleRequests.get()).isZero();
+    }
+
+    @Test
+    void thatUnsupportedBulkFallsBackToSingleChecks() {
+        for (int status : new int[]{404, 405, 501}) {
+            bulkStatus = status;
+            bulkRequests.set(0);
+            singleRequests.set(0);
+            UserAccessWebClient client = new UserAccessWebClient(webClient, 60_000);
+
+            assertThat(client.hasAccess(checks(), "token").await(10, TimeUnit.SECONDS)).containsExactly(true, false, true);
+            assertThat(client.hasAccess(checks(), "token").await(10, TimeUnit.SECONDS)).containsExactly(true, false, true);
+            assertThat(bulkRequests.get()).as("bulk requests with status %d", status).isEqualTo(1);
+            assertThat(singleRequests.get()).as("single requests with status %d", status).isEqualTo(6);
+        }
+    }
+
+    @Test
+    void thatBulkIsProbedAgainAfterRetryInterval() {
+        bulkStatus = 404;
+        UserAccessWebClient client = new UserAccessWebClient(webClient, 0);
+        assertThat(client.hasAccess(checks(), "token").await(10, TimeUnit.SECONDS)).containsExactly(true, false, true);
+        assertThat(singleRequests.get()).isEqualTo(3);
+
+        bulkStatus = 200;
+        assertThat(client.hasAccess(checks(), "token").await(10, TimeUnit.SECONDS)).containsExactly(true, false, true);
+        assertThat(bulkRequests.get()).isEqualTo(2);
+        assertThat(singleRequests.get()).isEqualTo(3);
+    }
+
+    @Test
+    void thatOtherBulkErrorsDenyAllChecks() {
+        bulkStatus = 403;
+        UserAccessWebClient client = new UserAccessWebClient(webClient);
+
+        assertThat(client.hasAccess(checks(), "token").await(10, TimeUnit.SECONDS)).containsExactly(false, false, false);
+        assertThat(singleRequests.get()).isZero();
+    }
+
+    @Test
+    void thatResultCountMismatchFails() {
+        bulkResultsDropped = 1;
+        UserAccessWebClient client = new UserAccessWebClient(webClient);
+
+        assertThatThrownBy(() -> client.hasAccess(checks(), "token").await(10, TimeUnit.SECONDS))
+                .hasRootCauseInstanceOf(IllegalStateException.class);
+    }
+}